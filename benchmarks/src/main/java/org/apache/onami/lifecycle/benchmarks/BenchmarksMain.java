@@ -0,0 +1,55 @@
+package org.apache.onami.lifecycle.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmarks jar: runs JMH with the allocation profiler, {@code -prof gc}, unless
+ * another profiler is requested on the command line or {@code -Dbenchmarks.gc=false} is set.
+ */
+public final class BenchmarksMain
+{
+
+    /**
+     * Hidden constructor, this class must not be instantiated.
+     */
+    private BenchmarksMain()
+    {
+        // do nothing
+    }
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        List<String> arguments = new ArrayList<String>( Arrays.asList( args ) );
+        if ( !arguments.contains( "-prof" ) && Boolean.parseBoolean( System.getProperty( "benchmarks.gc", "true" ) ) )
+        {
+            arguments.add( "-prof" );
+            arguments.add( "gc" );
+        }
+        Main.main( arguments.toArray( new String[arguments.size()] ) );
+    }
+
+}
@@ -0,0 +1,365 @@
+package org.apache.onami.lifecycle.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.lifecycle.core.AnnotatedMethodsCache;
+import org.apache.onami.lifecycle.jsr250.PostConstructModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lifecycle type listener scanning class hierarchies 1, 4 and 16 levels deep, each level
+ * declaring a {@code @PostConstruct} method among plain ones.
+ * <p>
+ * A type is heard once per injector, so every invocation creates an injector: {@link #plain()} is the
+ * baseline without lifecycle, {@link #coldScan()} clears the {@link AnnotatedMethodsCache} first,
+ * {@link #warmScan()} is served from it.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class HierarchyScanningBenchmark
+{
+
+    private static final Class<?>[] LEAVES = { null, Level1.class, Level2.class, Level3.class, Level4.class,
+        Level5.class, Level6.class, Level7.class, Level8.class, Level9.class, Level10.class, Level11.class,
+        Level12.class, Level13.class, Level14.class, Level15.class, Level16.class };
+
+    @Param( { "1", "4", "16" } )
+    private int depth;
+
+    private Class<?> leaf;
+
+    @Setup
+    public void setUp()
+    {
+        leaf = LEAVES[depth];
+    }
+
+    @Benchmark
+    public Object plain()
+    {
+        return Guice.createInjector().getInstance( leaf );
+    }
+
+    @Benchmark
+    public Object coldScan()
+    {
+        AnnotatedMethodsCache.clear();
+        return Guice.createInjector( new PostConstructModule() ).getInstance( leaf );
+    }
+
+    @Benchmark
+    public Object warmScan()
+    {
+        return Guice.createInjector( new PostConstructModule() ).getInstance( leaf );
+    }
+
+    public static class Level1
+    {
+
+        protected int value;
+
+        @PostConstruct
+        public void init1()
+        {
+            value++;
+        }
+
+        public int get1()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level2
+        extends Level1
+    {
+
+        @PostConstruct
+        public void init2()
+        {
+            value++;
+        }
+
+        public int get2()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level3
+        extends Level2
+    {
+
+        @PostConstruct
+        public void init3()
+        {
+            value++;
+        }
+
+        public int get3()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level4
+        extends Level3
+    {
+
+        @PostConstruct
+        public void init4()
+        {
+            value++;
+        }
+
+        public int get4()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level5
+        extends Level4
+    {
+
+        @PostConstruct
+        public void init5()
+        {
+            value++;
+        }
+
+        public int get5()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level6
+        extends Level5
+    {
+
+        @PostConstruct
+        public void init6()
+        {
+            value++;
+        }
+
+        public int get6()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level7
+        extends Level6
+    {
+
+        @PostConstruct
+        public void init7()
+        {
+            value++;
+        }
+
+        public int get7()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level8
+        extends Level7
+    {
+
+        @PostConstruct
+        public void init8()
+        {
+            value++;
+        }
+
+        public int get8()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level9
+        extends Level8
+    {
+
+        @PostConstruct
+        public void init9()
+        {
+            value++;
+        }
+
+        public int get9()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level10
+        extends Level9
+    {
+
+        @PostConstruct
+        public void init10()
+        {
+            value++;
+        }
+
+        public int get10()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level11
+        extends Level10
+    {
+
+        @PostConstruct
+        public void init11()
+        {
+            value++;
+        }
+
+        public int get11()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level12
+        extends Level11
+    {
+
+        @PostConstruct
+        public void init12()
+        {
+            value++;
+        }
+
+        public int get12()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level13
+        extends Level12
+    {
+
+        @PostConstruct
+        public void init13()
+        {
+            value++;
+        }
+
+        public int get13()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level14
+        extends Level13
+    {
+
+        @PostConstruct
+        public void init14()
+        {
+            value++;
+        }
+
+        public int get14()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level15
+        extends Level14
+    {
+
+        @PostConstruct
+        public void init15()
+        {
+            value++;
+        }
+
+        public int get15()
+        {
+            return value;
+        }
+
+    }
+
+    public static class Level16
+        extends Level15
+    {
+
+        @PostConstruct
+        public void init16()
+        {
+            value++;
+        }
+
+        public int get16()
+        {
+            return value;
+        }
+
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.apache.onami.lifecycle.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.lifecycle.jsr250.PostConstructModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of provisioning unscoped objects that declare a {@code @PostConstruct} method.
+ * <p>
+ * {@link #reflectivePerCallAccess()} reproduces the invocation strategy used before lifecycle
+ * methods were made accessible once per type, {@link #cachedAccessibleMethod()} the current one;
+ * run the provisioning benchmarks against both versions of the library to compare end-to-end.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ProvisioningBenchmark
+{
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private Injector plainInjector;
+
+    private Injector lifeCycleInjector;
+
+    private Method postConstruct;
+
+    private Method accessiblePostConstruct;
+
+    private Initialized target;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        plainInjector = Guice.createInjector();
+        lifeCycleInjector = Guice.createInjector( new PostConstructModule() );
+        postConstruct = Initialized.class.getMethod( "init" );
+        accessiblePostConstruct = Initialized.class.getMethod( "init" );
+        accessiblePostConstruct.setAccessible( true );
+        target = new Initialized();
+    }
+
+    @Benchmark
+    public Initialized provisionWithoutLifeCycle()
+    {
+        return plainInjector.getInstance( Initialized.class );
+    }
+
+    @Benchmark
+    public Initialized provisionWithPostConstruct()
+    {
+        return lifeCycleInjector.getInstance( Initialized.class );
+    }
+
+    @Benchmark
+    public Object reflectivePerCallAccess()
+        throws Exception
+    {
+        AccessController.doPrivileged( new PrivilegedAction<Void>()
+        {
+
+            @Override
+            public Void run()
+            {
+                postConstruct.setAccessible( true );
+                return null;
+            }
+
+        } );
+        return postConstruct.invoke( target );
+    }
+
+    @Benchmark
+    public Object cachedAccessibleMethod()
+        throws Exception
+    {
+        return accessiblePostConstruct.invoke( target, NO_ARGS );
+    }
+
+    public static class Initialized
+    {
+
+        private int initializations;
+
+        @PostConstruct
+        public void init()
+        {
+            initializations++;
+        }
+
+    }
+
+}
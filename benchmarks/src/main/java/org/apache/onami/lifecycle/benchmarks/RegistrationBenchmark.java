@@ -0,0 +1,131 @@
+package org.apache.onami.lifecycle.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.onami.lifecycle.core.DefaultStager;
+import org.apache.onami.lifecycle.core.StageHandler;
+import org.apache.onami.lifecycle.core.Stageable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures concurrent registrations into a {@link DefaultStager}, against the synchronized
+ * {@link ArrayDeque} it used before registration became lock-free, with 1, 8 and 64 registering threads.
+ * <p>
+ * Registered stageables are only released when the stager is replaced, at each iteration, hence the
+ * short iterations.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@State( Scope.Benchmark )
+public class RegistrationBenchmark
+{
+
+    private static final Stageable STAGEABLE = new Stageable()
+    {
+
+        @Override
+        public void stage( StageHandler stageHandler )
+        {
+            // nothing to do
+        }
+
+    };
+
+    private DefaultStager<Object> stager;
+
+    private Queue<Stageable> synchronizedDeque;
+
+    @Setup( Level.Iteration )
+    public void setUp()
+    {
+        stager = new DefaultStager<Object>( Object.class, DefaultStager.Order.FIRST_IN_LAST_OUT );
+        synchronizedDeque = new ArrayDeque<Stageable>();
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public void lockFree1()
+    {
+        stager.register( STAGEABLE );
+    }
+
+    @Benchmark
+    @Threads( 8 )
+    public void lockFree8()
+    {
+        stager.register( STAGEABLE );
+    }
+
+    @Benchmark
+    @Threads( 64 )
+    public void lockFree64()
+    {
+        stager.register( STAGEABLE );
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public void synchronized1()
+    {
+        registerSynchronized();
+    }
+
+    @Benchmark
+    @Threads( 8 )
+    public void synchronized8()
+    {
+        registerSynchronized();
+    }
+
+    @Benchmark
+    @Threads( 64 )
+    public void synchronized64()
+    {
+        registerSynchronized();
+    }
+
+    private void registerSynchronized()
+    {
+        synchronized ( synchronizedDeque )
+        {
+            synchronizedDeque.add( STAGEABLE );
+        }
+    }
+
+}
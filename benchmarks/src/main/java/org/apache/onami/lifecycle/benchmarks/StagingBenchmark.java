@@ -0,0 +1,115 @@
+package org.apache.onami.lifecycle.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.onami.lifecycle.core.DefaultStager;
+import org.apache.onami.lifecycle.core.StageHandler;
+import org.apache.onami.lifecycle.core.Stageable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures registering stageables into a {@link DefaultStager} and staging them, from 10^3 to 10^6
+ * stageables, in both staging orders.
+ * <p>
+ * Each invocation works on a fresh stager, hence the single shot mode.
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 10 )
+@Measurement( iterations = 20 )
+@Fork( value = 1, jvmArgsAppend = "-Xmx2g" )
+@State( Scope.Benchmark )
+public class StagingBenchmark
+{
+
+    private static final Stageable STAGEABLE = new Stageable()
+    {
+
+        @Override
+        public void stage( StageHandler stageHandler )
+        {
+            stageHandler.onSuccess( this );
+        }
+
+    };
+
+    @Param( { "1000", "10000", "100000", "1000000" } )
+    private int size;
+
+    @Param( { "FIRST_IN_FIRST_OUT", "FIRST_IN_LAST_OUT" } )
+    private DefaultStager.Order order;
+
+    private DefaultStager<Object> emptyStager;
+
+    private DefaultStager<Object> filledStager;
+
+    @Setup( Level.Invocation )
+    public void setUp()
+    {
+        emptyStager = new DefaultStager<Object>( Object.class, order );
+        filledStager = new DefaultStager<Object>( Object.class, order );
+        for ( int i = 0; i < size; i++ )
+        {
+            filledStager.register( STAGEABLE );
+        }
+    }
+
+    @Benchmark
+    public DefaultStager<Object> register()
+    {
+        for ( int i = 0; i < size; i++ )
+        {
+            emptyStager.register( STAGEABLE );
+        }
+        return emptyStager;
+    }
+
+    @Benchmark
+    public DefaultStager<Object> stage()
+    {
+        filledStager.stage();
+        return filledStager;
+    }
+
+    @Benchmark
+    public DefaultStager<Object> registerAndStage()
+    {
+        for ( int i = 0; i < size; i++ )
+        {
+            emptyStager.register( STAGEABLE );
+        }
+        emptyStager.stage();
+        return emptyStager;
+    }
+
+}
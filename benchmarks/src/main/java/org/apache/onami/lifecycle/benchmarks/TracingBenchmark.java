@@ -0,0 +1,97 @@
+package org.apache.onami.lifecycle.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.lifecycle.core.LoggingInvocationTracer;
+import org.apache.onami.lifecycle.jsr250.PostConstructModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the allocations performed while provisioning an object that declares a {@code @PostConstruct}
+ * method, depending on how lifecycle methods invocations are traced.
+ * <p>
+ * Run with the GC profiler ({@code java -jar target/benchmarks.jar TracingBenchmark -prof gc}) and compare
+ * {@code gc.alloc.rate.norm}: {@link #defaultTracer()} and {@link #disabledLoggingTracer()} have to allocate
+ * exactly as much per operation as {@link #withoutLifeCycle()}, that is the unscoped instance only.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class TracingBenchmark
+{
+
+    private Injector plainInjector;
+
+    private Injector defaultTracerInjector;
+
+    private Injector disabledLoggingInjector;
+
+    @Setup
+    public void setUp()
+    {
+        Logger logger = Logger.getLogger( TracingBenchmark.class.getName() );
+        logger.setLevel( Level.INFO );
+
+        PostConstructModule disabledLogging = new PostConstructModule();
+        disabledLogging.setInvocationTracer( new LoggingInvocationTracer( logger, Level.FINE ) );
+
+        plainInjector = Guice.createInjector();
+        defaultTracerInjector = Guice.createInjector( new PostConstructModule() );
+        disabledLoggingInjector = Guice.createInjector( disabledLogging );
+    }
+
+    @Benchmark
+    public Object withoutLifeCycle()
+    {
+        return plainInjector.getInstance( ProvisioningBenchmark.Initialized.class );
+    }
+
+    @Benchmark
+    public Object defaultTracer()
+    {
+        return defaultTracerInjector.getInstance( ProvisioningBenchmark.Initialized.class );
+    }
+
+    @Benchmark
+    public Object disabledLoggingTracer()
+    {
+        return disabledLoggingInjector.getInstance( ProvisioningBenchmark.Initialized.class );
+    }
+
+}
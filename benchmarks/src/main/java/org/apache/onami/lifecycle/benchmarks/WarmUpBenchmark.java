@@ -0,0 +1,216 @@
+package org.apache.onami.lifecycle.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Types;
+import org.apache.onami.lifecycle.core.LifeCycleStageModule;
+import org.apache.onami.lifecycle.core.Stager;
+import org.apache.onami.lifecycle.warmup.WarmUp;
+import org.apache.onami.lifecycle.warmup.WarmUpModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@code WarmUper} over synthetic dependency DAGs made of {@code width} independent lanes
+ * of {@code depth} warm ups each, every warm up depending on the previous one of its lane.
+ * <p>
+ * Lanes are generic layer types parameterized by a lane marker, {@code Layer3<Lane5>} depends on
+ * {@code Layer2<Lane5>}; each invocation provisions the DAG into a fresh injector, hence the single
+ * shot mode.
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 10 )
+@Measurement( iterations = 20 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class WarmUpBenchmark
+{
+
+    private static final long WORK = 10000;
+
+    private static final Class<?>[] LAYERS = { null, Layer1.class, Layer2.class, Layer3.class, Layer4.class };
+
+    private static final Class<?>[] LANES = { Lane0.class, Lane1.class, Lane2.class, Lane3.class, Lane4.class,
+        Lane5.class, Lane6.class, Lane7.class, Lane8.class, Lane9.class, Lane10.class, Lane11.class,
+        Lane12.class, Lane13.class, Lane14.class, Lane15.class };
+
+    @Param( { "1", "4", "16" } )
+    private int width;
+
+    @Param( { "1", "2", "4" } )
+    private int depth;
+
+    private Stager<WarmUp> stager;
+
+    @Setup( Level.Invocation )
+    public void setUp()
+    {
+        Injector injector = Guice.createInjector( new WarmUpModule() );
+        for ( int lane = 0; lane < width; lane++ )
+        {
+            injector.getInstance( Key.get( Types.newParameterizedTypeWithOwner( WarmUpBenchmark.class,
+                                                                                LAYERS[depth], LANES[lane] ) ) );
+        }
+        stager = injector.getInstance( LifeCycleStageModule.key( WarmUp.class ) );
+    }
+
+    @Benchmark
+    public Stager<WarmUp> warmUp()
+    {
+        stager.stage();
+        return stager;
+    }
+
+    public static class Layer1<L>
+    {
+
+        @WarmUp
+        public void warmUp()
+        {
+            Blackhole.consumeCPU( WORK );
+        }
+
+    }
+
+    public static class Layer2<L>
+    {
+
+        @Inject
+        Layer1<L> previous;
+
+        @WarmUp
+        public void warmUp()
+        {
+            Blackhole.consumeCPU( WORK );
+        }
+
+    }
+
+    public static class Layer3<L>
+    {
+
+        @Inject
+        Layer2<L> previous;
+
+        @WarmUp
+        public void warmUp()
+        {
+            Blackhole.consumeCPU( WORK );
+        }
+
+    }
+
+    public static class Layer4<L>
+    {
+
+        @Inject
+        Layer3<L> previous;
+
+        @WarmUp
+        public void warmUp()
+        {
+            Blackhole.consumeCPU( WORK );
+        }
+
+    }
+
+    public static final class Lane0
+    {
+    }
+
+    public static final class Lane1
+    {
+    }
+
+    public static final class Lane2
+    {
+    }
+
+    public static final class Lane3
+    {
+    }
+
+    public static final class Lane4
+    {
+    }
+
+    public static final class Lane5
+    {
+    }
+
+    public static final class Lane6
+    {
+    }
+
+    public static final class Lane7
+    {
+    }
+
+    public static final class Lane8
+    {
+    }
+
+    public static final class Lane9
+    {
+    }
+
+    public static final class Lane10
+    {
+    }
+
+    public static final class Lane11
+    {
+    }
+
+    public static final class Lane12
+    {
+    }
+
+    public static final class Lane13
+    {
+    }
+
+    public static final class Lane14
+    {
+    }
+
+    public static final class Lane15
+    {
+    }
+
+}
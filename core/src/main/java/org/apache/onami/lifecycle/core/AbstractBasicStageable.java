@@ -38,6 +38,62 @@ public abstract class AbstractBasicStageable<S>
         this.object = object;
     }
 
+    /**
+     * Returns the name of the staging operation reported to {@link TimedStageHandler}s.
+     *
+     * @return the name of the staging operation, {@code stage} by default
+     */
+    protected String getOperation()
+    {
+        return "stage";
+    }
+
+    /**
+     * Notifies a {@link TimedStageHandler} the object is about to be staged.
+     *
+     * @param stageHandler the handler to track progresses.
+     * @return the staging start time, to be passed to {@link #finishTiming(StageHandler, long)}
+     */
+    final long startTiming( StageHandler stageHandler )
+    {
+        if ( stageHandler instanceof TimedStageHandler )
+        {
+            ( (TimedStageHandler) stageHandler ).onStart( object, getOperation() );
+            return System.nanoTime();
+        }
+        return 0L;
+    }
+
+    /**
+     * Notifies a {@link TimedStageHandler} the object has been staged.
+     *
+     * @param stageHandler the handler to track progresses.
+     * @param start        the staging start time, as returned by {@link #startTiming(StageHandler)}
+     */
+    final void finishTiming( StageHandler stageHandler, long start )
+    {
+        if ( stageHandler instanceof TimedStageHandler )
+        {
+            ( (TimedStageHandler) stageHandler ).onFinish( object, getOperation(), System.nanoTime() - start );
+        }
+    }
+
+    /**
+     * Returns the object staged by the input stageable, to be reported to the {@link StageHandler}.
+     *
+     * @param stageable the stageable
+     * @return the staged object, the stageable itself if it does not wrap an object
+     * @since 0.2.0
+     */
+    public static Object injecteeOf( Stageable stageable )
+    {
+        if ( stageable instanceof AbstractBasicStageable )
+        {
+            return ( (AbstractBasicStageable<?>) stageable ).object;
+        }
+        return stageable;
+    }
+
     /**
      * {@inheritDoc}
      */
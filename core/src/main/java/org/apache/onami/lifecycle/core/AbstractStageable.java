@@ -39,15 +39,18 @@ public abstract class AbstractStageable<S>
     @Override
     public final void stage( StageHandler stageHandler )
     {
+        long start = startTiming( stageHandler );
         try
         {
             doStage();
         }
         catch ( Throwable e )
         {
+            finishTiming( stageHandler, start );
             stageHandler.onError( object, e );
             return;
         }
+        finishTiming( stageHandler, start );
         stageHandler.onSuccess( object );
     }
 
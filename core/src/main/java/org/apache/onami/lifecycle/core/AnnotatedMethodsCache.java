@@ -0,0 +1,210 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import java.lang.annotation.Annotation;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared cache of the annotated methods declared by classes.
+ * <p>
+ * Each class is scanned once, indexing the methods under every annotation they carry, so that
+ * all the lifecycle listeners of all the modules are served from the same index regardless of
+ * how many annotations they search for. The classes listed in the index generated at compile time
+ * by the {@code org.apache.onami.lifecycle.processor.LifeCycleIndexProcessor} can be scanned ahead
+ * of time, see {@link LifeCycleModule#setIndexPreloading(Executor)}. Classes are weakly referenced
+ * and their indexes softly referenced, so the cache never prevents class unloading.
+ *
+ * @since 0.2.0
+ */
+public final class AnnotatedMethodsCache
+{
+
+    private static final Map<Class<?>, SoftReference<Map<Class<? extends Annotation>, List<Method>>>> CACHE =
+        new WeakHashMap<Class<?>, SoftReference<Map<Class<? extends Annotation>, List<Method>>>>();
+
+    private static final AtomicLong HITS = new AtomicLong();
+
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private static final AtomicLong INDEXED = new AtomicLong();
+
+    /**
+     * Hidden constructor, this class must not be instantiated.
+     */
+    private AnnotatedMethodsCache()
+    {
+        // do nothing
+    }
+
+    /**
+     * Returns the methods declared by the input class carrying the input annotation.
+     *
+     * @param klass          the class declaring the methods.
+     * @param annotationType the annotation to be searched.
+     * @return the annotated methods, in declaration order.
+     */
+    static List<Method> getDeclaredMethods( Class<?> klass, Class<? extends Annotation> annotationType )
+    {
+        List<Method> methods = getIndex( klass ).get( annotationType );
+        if ( methods == null )
+        {
+            return Collections.emptyList();
+        }
+        return methods;
+    }
+
+    private static Map<Class<? extends Annotation>, List<Method>> getIndex( Class<?> klass )
+    {
+        Map<Class<? extends Annotation>, List<Method>> index;
+        synchronized ( CACHE )
+        {
+            SoftReference<Map<Class<? extends Annotation>, List<Method>>> reference = CACHE.get( klass );
+            index = reference != null ? reference.get() : null;
+        }
+        if ( index != null )
+        {
+            HITS.incrementAndGet();
+            return index;
+        }
+
+        MISSES.incrementAndGet();
+        index = scan( klass );
+        synchronized ( CACHE )
+        {
+            CACHE.put( klass, new SoftReference<Map<Class<? extends Annotation>, List<Method>>>( index ) );
+        }
+        return index;
+    }
+
+    private static Map<Class<? extends Annotation>, List<Method>> scan( Class<?> klass )
+    {
+        Map<Class<? extends Annotation>, List<Method>> index = new HashMap<Class<? extends Annotation>, List<Method>>();
+        for ( Method method : klass.getDeclaredMethods() )
+        {
+            for ( Annotation annotation : method.getDeclaredAnnotations() )
+            {
+                List<Method> methods = index.get( annotation.annotationType() );
+                if ( methods == null )
+                {
+                    methods = new ArrayList<Method>( 1 );
+                    index.put( annotation.annotationType(), methods );
+                }
+                methods.add( method );
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Scans ahead of time, on the input executor, the classes listed in the compile-time index visible from the
+     * input class loader, so that the lifecycle listeners find them in the cache while the injector is created.
+     * <p>
+     * The index only tells which classes to scan: they are scanned as any other class, so an index outdated by
+     * a later compilation can't hide their annotated methods.
+     *
+     * @param classLoader the class loader the index resources and the classes are loaded from.
+     * @param executor    the executor scanning the classes.
+     * @return the number of classes submitted to the executor.
+     */
+    public static int preload( final ClassLoader classLoader, Executor executor )
+    {
+        Set<String> classNames = LifeCycleIndex.get( classLoader ).getClassNames();
+        for ( final String className : classNames )
+        {
+            executor.execute( new Runnable()
+            {
+
+                @Override
+                public void run()
+                {
+                    Class<?> klass;
+                    try
+                    {
+                        klass = Class.forName( className, false, classLoader );
+                    }
+                    catch ( ClassNotFoundException e )
+                    {
+                        // removed since the index was generated
+                        return;
+                    }
+                    catch ( LinkageError e )
+                    {
+                        // let the lifecycle listeners report it, if the class is ever bound
+                        return;
+                    }
+                    getIndex( klass );
+                    INDEXED.incrementAndGet();
+                }
+
+            } );
+        }
+        return classNames.size();
+    }
+
+    /**
+     * @return the number of lookups served from the cache.
+     */
+    public static long getHitCount()
+    {
+        return HITS.get();
+    }
+
+    /**
+     * @return the number of lookups that required scanning a class.
+     */
+    public static long getMissCount()
+    {
+        return MISSES.get();
+    }
+
+    /**
+     * @return the number of classes scanned ahead of time from the compile-time index, see
+     *         {@link #preload(ClassLoader, Executor)}.
+     */
+    public static long getIndexedCount()
+    {
+        return INDEXED.get();
+    }
+
+    /**
+     * Empties the cache and resets its counters.
+     */
+    public static void clear()
+    {
+        synchronized ( CACHE )
+        {
+            CACHE.clear();
+        }
+        HITS.set( 0 );
+        MISSES.set( 0 );
+        INDEXED.set( 0 );
+    }
+
+}
@@ -0,0 +1,276 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.String.format;
+
+/**
+ * Collects the operations started by asynchronous stage methods, so that a stager can launch all of
+ * them before waiting for them together, see {@link #awaitAll(long)}.
+ * <p>
+ * Stage methods are told whether the handler they are staged with is an {@code AsyncStageHandler}:
+ * when it is not, they wait for their own operation before reporting their outcome.
+ * Outcomes are reported to the delegate handler once the operations complete.
+ */
+final class AsyncStageHandler
+    implements TimedStageHandler
+{
+
+    private final StageHandler delegate;
+
+    /**
+     * Accessed by one thread at a time: the staging thread, or a worker the staging thread waits for.
+     */
+    private final List<PendingStage> pending = new ArrayList<PendingStage>();
+
+    AsyncStageHandler( StageHandler delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Defers reporting the outcome of an asynchronous stage method until its operation completes.
+     *
+     * @param stageable the stageable which started the operation
+     * @param future    the operation
+     * @param start     the staging start time
+     */
+    void defer( AbstractBasicStageable<?> stageable, Future<?> future, long start )
+    {
+        pending.add( new PendingStage( stageable, future, start, -1 ) );
+    }
+
+    /**
+     * Moves the deferred operations to another handler, to be awaited together with its own operations.
+     *
+     * @param target      the handler awaiting the operations
+     * @param budgetNanos the time each operation is given from its staging start, negative for no budget
+     */
+    void handOver( AsyncStageHandler target, long budgetNanos )
+    {
+        for ( PendingStage stage : pending )
+        {
+            target.pending.add( new PendingStage( stage.stageable, stage.future, stage.start, budgetNanos ) );
+        }
+        pending.clear();
+    }
+
+    /**
+     * Waits for the deferred operations and reports their outcome, in staging order. Operations still
+     * running once the timeout, or their own budget, expires are cancelled and reported with a
+     * {@link TimeoutException}.
+     *
+     * @param timeoutNanos the time to wait for all the operations, negative to wait indefinitely
+     */
+    void awaitAll( long timeoutNanos )
+    {
+        if ( pending.isEmpty() )
+        {
+            return;
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        boolean interrupted = false;
+        for ( PendingStage stage : pending )
+        {
+            if ( interrupted )
+            {
+                stage.future.cancel( true );
+                stage.fail( delegate, new InterruptedException( "Interrupted while waiting for " + stage ) );
+                continue;
+            }
+            try
+            {
+                // an operation is bounded by its own budget, if any, and by the timeout
+                long now = System.nanoTime();
+                long remaining = stage.remaining( now );
+                if ( timeoutNanos >= 0 )
+                {
+                    long left = Math.max( 0, deadline - now );
+                    remaining = remaining < 0 ? left : Math.min( remaining, left );
+                }
+                stage.await( delegate, remaining );
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+                stage.future.cancel( true );
+                stage.fail( delegate, e );
+            }
+        }
+        pending.clear();
+
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the operation of an asynchronous stage method and reports its outcome.
+     *
+     * @param stageable    the stageable which started the operation
+     * @param future       the operation
+     * @param start        the staging start time
+     * @param stageHandler the handler the outcome is reported to
+     */
+    static void await( AbstractBasicStageable<?> stageable, Future<?> future, long start, StageHandler stageHandler )
+    {
+        PendingStage stage = new PendingStage( stageable, future, start, -1 );
+        try
+        {
+            stage.await( stageHandler, -1 );
+        }
+        catch ( InterruptedException e )
+        {
+            future.cancel( true );
+            stage.fail( stageHandler, e );
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onStart( I injectee, String operation )
+    {
+        if ( delegate instanceof TimedStageHandler )
+        {
+            ( (TimedStageHandler) delegate ).onStart( injectee, operation );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onFinish( I injectee, String operation, long nanos )
+    {
+        if ( delegate instanceof TimedStageHandler )
+        {
+            ( (TimedStageHandler) delegate ).onFinish( injectee, operation, nanos );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onSuccess( I injectee )
+    {
+        delegate.onSuccess( injectee );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, E extends Throwable> void onError( I injectee, E error )
+    {
+        delegate.onError( injectee, error );
+    }
+
+    private static final class PendingStage
+    {
+
+        final AbstractBasicStageable<?> stageable;
+
+        final Future<?> future;
+
+        final long start;
+
+        final long budget;
+
+        PendingStage( AbstractBasicStageable<?> stageable, Future<?> future, long start, long budget )
+        {
+            this.stageable = stageable;
+            this.future = future;
+            this.start = start;
+            this.budget = budget;
+        }
+
+        /**
+         * @return the time left of the operation budget, negative if it has no budget
+         */
+        long remaining( long now )
+        {
+            return budget < 0 ? -1 : Math.max( 0, start + budget - now );
+        }
+
+        void await( StageHandler stageHandler, long timeoutNanos )
+            throws InterruptedException
+        {
+            try
+            {
+                if ( timeoutNanos < 0 )
+                {
+                    future.get();
+                }
+                else
+                {
+                    future.get( timeoutNanos, TimeUnit.NANOSECONDS );
+                }
+            }
+            catch ( ExecutionException e )
+            {
+                fail( stageHandler, e.getCause() );
+                return;
+            }
+            catch ( CancellationException e )
+            {
+                fail( stageHandler, e );
+                return;
+            }
+            catch ( TimeoutException e )
+            {
+                future.cancel( true );
+                fail( stageHandler, new TimeoutException( format( "%s did not complete staging before the deadline",
+                                                                  stageable ) ) );
+                return;
+            }
+            stageable.finishTiming( stageHandler, start );
+            stageHandler.onSuccess( stageable.object );
+        }
+
+        void fail( StageHandler stageHandler, Throwable error )
+        {
+            stageable.finishTiming( stageHandler, start );
+            stageHandler.onError( stageable.object, error );
+        }
+
+        @Override
+        public String toString()
+        {
+            return stageable.toString();
+        }
+
+    }
+
+}
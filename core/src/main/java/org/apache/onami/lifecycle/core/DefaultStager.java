@@ -20,24 +20,103 @@ package org.apache.onami.lifecycle.core;
  */
 
 import java.io.Closeable;
+import java.lang.ref.ReferenceQueue;
 import java.util.ArrayDeque;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.String.format;
 
 /**
  * Default {@link Stager} implementation.
+ * <p>
+ * By default stageables are staged one after the other on the thread invoking {@link #stage(StageHandler)}.
+ * Once a stage timeout or a stageable timeout is set, each stageable is instead staged on a daemon thread
+ * the stager waits for up to the stageable budget: a stageable overrunning its budget is interrupted and
+ * abandoned, the {@link StageHandler} receives a {@link TimeoutException} for it and the next stageable
+ * is staged. Stageables still registered once the stage timeout expires are reported the same way,
+ * without being staged.
+ * <p>
+ * Registered {@link ExecutorService}s are shut down one after the other, unless batched executor draining
+ * is enabled, see {@link #setBatchedExecutorDraining(boolean)}.
+ * <p>
+ * Registered injectees are strongly referenced until staged, unless weak references are enabled,
+ * see {@link #setWeakReferences(boolean)}.
+ * <p>
+ * Stage methods returning a {@link Future} or a {@code CompletionStage} do not hold the staging thread:
+ * the operations they start are awaited together once all the stageables have been staged, within
+ * the stage timeout if any, and their outcome is reported then. Stageables run with a stageable
+ * timeout wait for their own operation within their budget instead.
  */
 public class DefaultStager<A>
     implements DisposingStager<A>
 {
     private final Class<A> stage;
 
+    private final Order order;
+
+    /**
+     * Elements registered since the last staging step; registration is lock-free.
+     */
+    private final Queue<Stageable> registered = new ConcurrentLinkedQueue<Stageable>();
+
+    /**
+     * Elements have to be disposed, in staging order, guarded by itself.
+     */
+    private final Deque<Stageable> stageables = new ArrayDeque<Stageable>();
+
+    /**
+     * Stageables budgets overrides, by injectee type.
+     */
+    private final Map<Class<?>, Long> stageableTimeouts = new LinkedHashMap<Class<?>, Long>();
+
+    private volatile long stageTimeoutNanos;
+
+    private volatile long stageableTimeoutNanos;
+
+    private volatile long executorTerminationNanos = TimeUnit.MINUTES.toNanos( 1 );
+
+    private volatile boolean batchedExecutorDraining;
+
     /**
-     * Stack of elements have to be disposed.
+     * Minimum number of collected injectees before the registered stageables are compacted.
      */
-    private final Queue<Stageable> stageables;
+    private static final int COMPACTION_THRESHOLD = 64;
+
+    private final ReferenceQueue<Object> collectedInjectees = new ReferenceQueue<Object>();
+
+    private volatile boolean weakReferences;
+
+    /**
+     * Number of registered stageables known to reference a collected injectee.
+     */
+    private final AtomicInteger collectedEntries = new AtomicInteger();
+
+    private final Lock compactionLock = new ReentrantLock();
+
+    /**
+     * Number of collected injectees triggering the next compaction, updated holding {@code compactionLock}.
+     */
+    private volatile int compactionThreshold = COMPACTION_THRESHOLD;
+
+    private final AtomicLong collectedCount = new AtomicLong();
 
     /**
      * @param stage the annotation that specifies this stage
@@ -55,18 +134,12 @@ public class DefaultStager<A>
     {
         this.stage = stage;
 
-        Queue<Stageable> localStageables;
         switch ( mode )
         {
             case FIRST_IN_FIRST_OUT:
-            {
-                localStageables = new ArrayDeque<Stageable>();
-                break;
-            }
-
             case FIRST_IN_LAST_OUT:
             {
-                localStageables = Collections.asLifoQueue( new ArrayDeque<Stageable>() );
+                order = mode;
                 break;
             }
 
@@ -75,7 +148,122 @@ public class DefaultStager<A>
                 throw new IllegalArgumentException( "Unknown mode: " + mode );
             }
         }
-        stageables = localStageables;
+    }
+
+    /**
+     * Sets the maximum time {@link #stage(StageHandler)} takes, the default is to wait until every stageable
+     * completes. Stageables still registered once it expires are reported as timed out.
+     *
+     * @param timeout max time to stage, 0 to wait forever
+     * @param unit    time unit
+     */
+    public void setStageTimeout( long timeout, TimeUnit unit )
+    {
+        stageTimeoutNanos = toNanos( timeout, unit );
+    }
+
+    /**
+     * Sets the maximum time each stageable may take before being interrupted and reported as timed out,
+     * the default is to wait until it completes.
+     *
+     * @param timeout max time to stage a single stageable, 0 to wait forever
+     * @param unit    time unit
+     */
+    public void setStageableTimeout( long timeout, TimeUnit unit )
+    {
+        stageableTimeoutNanos = toNanos( timeout, unit );
+    }
+
+    /**
+     * Overrides the maximum time stageables of the given injectee type may take,
+     * see {@link #setStageableTimeout(long, TimeUnit)}. When several overrides match an injectee,
+     * the one for its exact class wins, otherwise the first one set.
+     *
+     * @param type    the injectee type, including subclasses and implementations
+     * @param timeout max time to stage a single stageable of the given type, 0 to wait forever
+     * @param unit    time unit
+     */
+    public void setStageableTimeout( Class<?> type, long timeout, TimeUnit unit )
+    {
+        if ( type == null )
+        {
+            throw new IllegalArgumentException( "Type must be specified" );
+        }
+        long timeoutNanos = toNanos( timeout, unit );
+        synchronized ( stageableTimeouts )
+        {
+            stageableTimeouts.put( type, timeoutNanos );
+        }
+    }
+
+    /**
+     * Sets the maximum time registered {@link ExecutorService}s are given to complete their running tasks
+     * before being forcibly shut down, the default is one minute. It applies to executors registered afterwards.
+     *
+     * @param timeout max time to wait for executors termination
+     * @param unit    time unit
+     */
+    public void setExecutorTerminationTimeout( long timeout, TimeUnit unit )
+    {
+        executorTerminationNanos = toNanos( timeout, unit );
+    }
+
+    /**
+     * Enables or disables batched executor draining. When enabled, as soon as the first registered
+     * {@link ExecutorService} is staged, all the registered executors are shut down at once and awaited
+     * concurrently against a shared deadline, the executor termination timeout, so that the executors drain
+     * in parallel. Executors still running by then are forcibly shut down and reported with an
+     * {@link ExecutorTerminationTimeoutException} carrying the number of dropped tasks; drain times are
+     * reported to {@link TimedStageHandler}s.
+     *
+     * @param batchedExecutorDraining true to drain executors concurrently, false to drain them one by one
+     */
+    public void setBatchedExecutorDraining( boolean batchedExecutorDraining )
+    {
+        this.batchedExecutorDraining = batchedExecutorDraining;
+    }
+
+    /**
+     * Enables or disables weak references to the injectees of stage methods registered afterwards.
+     * When enabled, registering an injectee doesn't prevent it from being garbage collected: collected
+     * injectees are dropped from the registered stageables, and their stage methods are not invoked.
+     * Use it for stagers of unscoped or short-lived injectees whose stage methods only release
+     * resources which become unreachable together with the injectee.
+     * <p>
+     * Registered {@link Closeable}s, {@link ExecutorService}s and custom {@link Stageable}s are always
+     * strongly referenced.
+     *
+     * @param weakReferences true to reference the injectees of stage methods weakly
+     */
+    public void setWeakReferences( boolean weakReferences )
+    {
+        this.weakReferences = weakReferences;
+    }
+
+    /**
+     * Returns the number of registered stageables, excluding those referencing injectees known to be collected.
+     *
+     * @return the number of registered stageables
+     */
+    public int getLiveCount()
+    {
+        sweep();
+        synchronized ( stageables )
+        {
+            transfer();
+            return Math.max( 0, stageables.size() - collectedEntries.get() );
+        }
+    }
+
+    /**
+     * Returns the number of weakly referenced injectees dropped because they were collected before being staged.
+     *
+     * @return the number of collected injectees dropped
+     */
+    public long getCollectedCount()
+    {
+        sweep();
+        return collectedCount.get();
     }
 
     /**
@@ -84,9 +272,119 @@ public class DefaultStager<A>
     @Override
     public void register( Stageable stageable )
     {
-        synchronized ( stageables )
+        if ( weakReferences && stageable instanceof StageableMethod )
+        {
+            stageable = new WeakStageableMethod( (StageableMethod) stageable, collectedInjectees );
+        }
+        registered.add( stageable );
+        if ( weakReferences )
+        {
+            sweep();
+        }
+    }
+
+    /**
+     * Accounts the collected injectees, compacting the registered stageables once collected injectees
+     * outnumber the stageables which survived the previous compaction.
+     */
+    private void sweep()
+    {
+        while ( collectedInjectees.poll() != null )
+        {
+            collectedEntries.incrementAndGet();
+        }
+        if ( collectedEntries.get() >= compactionThreshold && compactionLock.tryLock() )
+        {
+            try
+            {
+                int survivors = compact( registered.iterator() );
+                synchronized ( stageables )
+                {
+                    survivors += compact( stageables.iterator() );
+                }
+                while ( collectedInjectees.poll() != null )
+                {
+                    // already removed
+                }
+                collectedEntries.set( 0 );
+                compactionThreshold = Math.max( COMPACTION_THRESHOLD, survivors );
+            }
+            finally
+            {
+                compactionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the stageables referencing collected injectees.
+     *
+     * @return the number of remaining stageables
+     */
+    private int compact( Iterator<Stageable> iterator )
+    {
+        int survivors = 0;
+        while ( iterator.hasNext() )
+        {
+            Stageable stageable = iterator.next();
+            if ( stageable instanceof WeakStageableMethod && ( (WeakStageableMethod) stageable ).get() == null )
+            {
+                iterator.remove();
+                collectedCount.incrementAndGet();
+            }
+            else
+            {
+                survivors++;
+            }
+        }
+        return survivors;
+    }
+
+    /**
+     * Moves the registered stageables to the ones to stage, according to the staging order.
+     * Must be invoked holding the {@code stageables} lock.
+     */
+    private void transfer()
+    {
+        Stageable stageable;
+        while ( ( stageable = registered.poll() ) != null )
+        {
+            if ( order == Order.FIRST_IN_FIRST_OUT )
+            {
+                stageables.addLast( stageable );
+            }
+            else
+            {
+                stageables.addFirst( stageable );
+            }
+        }
+    }
+
+    /**
+     * Takes the next stageable to stage, skipping the ones referencing collected injectees.
+     *
+     * @return the next stageable to stage, null if none is registered
+     */
+    private Stageable poll()
+    {
+        while ( true )
         {
-            stageables.add( stageable );
+            Stageable stageable;
+            synchronized ( stageables )
+            {
+                transfer();
+                stageable = stageables.pollFirst();
+            }
+            if ( !( stageable instanceof WeakStageableMethod ) )
+            {
+                return stageable;
+            }
+            StageableMethod resolved = ( (WeakStageableMethod) stageable ).resolve();
+            if ( resolved != null )
+            {
+                return resolved;
+            }
+            collectedCount.incrementAndGet();
         }
     }
 
@@ -96,7 +394,7 @@ public class DefaultStager<A>
     @Override
     public <T extends ExecutorService> T register( T executorService )
     {
-        register( new ExecutorServiceStageable( executorService ) );
+        register( new ExecutorServiceStageable( executorService, executorTerminationNanos ) );
         return executorService;
     }
 
@@ -130,21 +428,228 @@ public class DefaultStager<A>
             stageHandler = new NoOpStageHandler();
         }
 
+        if ( stageTimeoutNanos > 0 || stageableTimeoutNanos > 0 || hasStageableTimeouts() )
+        {
+            stageWithTimeouts( stageHandler );
+            return;
+        }
+
+        AsyncStageHandler asyncHandler = new AsyncStageHandler( stageHandler );
         while ( true )
         {
-            Stageable stageable;
-            synchronized ( stageables )
-            {
-                stageable = stageables.poll();
-            }
+            Stageable stageable = poll();
             if ( stageable == null )
             {
                 break;
             }
-            stageable.stage( stageHandler );
+            if ( batchedExecutorDraining && stageable instanceof ExecutorServiceStageable )
+            {
+                drainExecutors( (ExecutorServiceStageable) stageable, executorTerminationNanos, stageHandler );
+                continue;
+            }
+            stageable.stage( asyncHandler );
+        }
+        asyncHandler.awaitAll( -1 );
+    }
+
+    private void stageWithTimeouts( StageHandler stageHandler )
+    {
+        AsyncStageHandler asyncHandler = new AsyncStageHandler( stageHandler );
+        long stageTimeout = stageTimeoutNanos;
+        long deadline = System.nanoTime() + stageTimeout;
+        ExecutorService executor = Executors.newCachedThreadPool( new StagingThreadFactory( stage ) );
+        try
+        {
+            while ( true )
+            {
+                Stageable stageable = poll();
+                if ( stageable == null )
+                {
+                    break;
+                }
+
+                Object injectee = AbstractBasicStageable.injecteeOf( stageable );
+                long ownBudget = budgetOf( injectee );
+                long budget = ownBudget;
+                if ( stageTimeout > 0 )
+                {
+                    long remaining = deadline - System.nanoTime();
+                    if ( remaining <= 0 )
+                    {
+                        if ( stageable instanceof ExecutorServiceStageable )
+                        {
+                            // no time left to drain it, but its threads must not outlive the stage
+                            List<Runnable> dropped = ( (ExecutorServiceStageable) stageable ).object.shutdownNow();
+                            stageHandler.onError( injectee, new ExecutorTerminationTimeoutException(
+                                format( "Stage %s timed out before draining %s, %d tasks dropped", stage.getName(),
+                                        stageable, dropped.size() ), dropped.size() ) );
+                        }
+                        else
+                        {
+                            stageHandler.onError( injectee, new TimeoutException(
+                                format( "Stage %s timed out before staging %s", stage.getName(), stageable ) ) );
+                        }
+                        continue;
+                    }
+                    budget = budget > 0 ? Math.min( budget, remaining ) : remaining;
+                }
+
+                if ( batchedExecutorDraining && stageable instanceof ExecutorServiceStageable )
+                {
+                    long drainBudget = executorTerminationNanos;
+                    if ( stageTimeout > 0 )
+                    {
+                        drainBudget = Math.min( drainBudget, deadline - System.nanoTime() );
+                    }
+                    drainExecutors( (ExecutorServiceStageable) stageable, drainBudget, stageHandler );
+                    continue;
+                }
+
+                if ( budget <= 0 )
+                {
+                    stageable.stage( asyncHandler );
+                }
+                else if ( !stageWithin( executor, stageable, injectee, stageHandler, budget, asyncHandler,
+                                        ownBudget > 0 ? ownBudget : -1 ) )
+                {
+                    // interrupted, remaining stageables are left registered
+                    break;
+                }
+            }
+            asyncHandler.awaitAll( stageTimeout > 0 ? Math.max( 0, deadline - System.nanoTime() ) : -1 );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Drains the given executor together with all the other executors still registered.
+     */
+    private void drainExecutors( ExecutorServiceStageable first, long timeoutNanos, StageHandler stageHandler )
+    {
+        List<ExecutorServiceStageable> batch = new ArrayList<ExecutorServiceStageable>();
+        batch.add( first );
+        synchronized ( stageables )
+        {
+            transfer();
+            for ( Iterator<Stageable> iterator = stageables.iterator(); iterator.hasNext(); )
+            {
+                Stageable stageable = iterator.next();
+                if ( stageable instanceof ExecutorServiceStageable )
+                {
+                    batch.add( (ExecutorServiceStageable) stageable );
+                    iterator.remove();
+                }
+            }
+        }
+        ExecutorServiceStageable.drain( batch, timeoutNanos, stageHandler );
+    }
+
+    /**
+     * Stages the stageable on a worker, which is interrupted once the budget expires. The operations started by
+     * asynchronous stage methods are not awaited here: they are handed over to the stage handler, to be awaited
+     * together with the ones started by the other stageables.
+     *
+     * @param budget            the time given to the stage method itself
+     * @param stageAsyncHandler the handler collecting the operations of the whole stage
+     * @param operationBudget   the time given to the operation of an asynchronous stage method, negative for none
+     * @return false if the current thread has been interrupted while waiting for the stageable, true otherwise
+     */
+    private boolean stageWithin( ExecutorService executor, final Stageable stageable, Object injectee,
+                                 StageHandler stageHandler, long budget, AsyncStageHandler stageAsyncHandler,
+                                 long operationBudget )
+    {
+        final GuardedStageHandler guardedHandler = new GuardedStageHandler( stageHandler );
+        // asynchronous operations are handed back, so that the staging thread cancels them once they time out
+        final AsyncStageHandler asyncHandler = new AsyncStageHandler( guardedHandler );
+        Future<?> staging = executor.submit( new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                stageable.stage( asyncHandler );
+            }
+
+        } );
+
+        try
+        {
+            staging.get( budget, TimeUnit.NANOSECONDS );
+            asyncHandler.handOver( stageAsyncHandler, operationBudget );
+        }
+        catch ( TimeoutException e )
+        {
+            // give up before interrupting, so the stageable can't report its own outcome
+            boolean report = guardedHandler.complete();
+            staging.cancel( true );
+            if ( report )
+            {
+                stageHandler.onError( injectee, new TimeoutException(
+                    format( "%s did not complete staging within %d ms", stageable,
+                            TimeUnit.NANOSECONDS.toMillis( budget ) ) ) );
+            }
+        }
+        catch ( ExecutionException e )
+        {
+            if ( guardedHandler.complete() )
+            {
+                stageHandler.onError( injectee, e.getCause() );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            boolean report = guardedHandler.complete();
+            staging.cancel( true );
+            if ( report )
+            {
+                stageHandler.onError( injectee, e );
+            }
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean hasStageableTimeouts()
+    {
+        synchronized ( stageableTimeouts )
+        {
+            return !stageableTimeouts.isEmpty();
+        }
+    }
+
+    private long budgetOf( Object injectee )
+    {
+        synchronized ( stageableTimeouts )
+        {
+            Long budget = stageableTimeouts.get( injectee.getClass() );
+            if ( budget == null )
+            {
+                for ( Map.Entry<Class<?>, Long> override : stageableTimeouts.entrySet() )
+                {
+                    if ( override.getKey().isInstance( injectee ) )
+                    {
+                        budget = override.getValue();
+                        break;
+                    }
+                }
+            }
+            return budget != null ? budget : stageableTimeoutNanos;
         }
     }
 
+    private static long toNanos( long timeout, TimeUnit unit )
+    {
+        if ( timeout < 0 )
+        {
+            throw new IllegalArgumentException( "Timeout cannot be negative: " + timeout );
+        }
+        return unit.toNanos( timeout );
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -170,46 +675,29 @@ public class DefaultStager<A>
         FIRST_IN_LAST_OUT
     }
 
-    private static class CloseableStageable extends AbstractStageable<Closeable>
+    /**
+     * Creates the daemon threads stageables are staged on when timeouts are set,
+     * so that abandoned stageables don't prevent the JVM from exiting.
+     */
+    private static final class StagingThreadFactory
+        implements ThreadFactory
     {
 
-        public CloseableStageable( Closeable closeable )
-        {
-            super( closeable );
-        }
-
-        @Override
-        protected void doStage() throws Exception
-        {
-            object.close();
-        }
-
-    }
+        private final AtomicInteger count = new AtomicInteger();
 
-    private static class ExecutorServiceStageable extends AbstractStageable<ExecutorService>
-    {
+        private final String prefix;
 
-        public ExecutorServiceStageable( ExecutorService executor )
+        StagingThreadFactory( Class<?> stage )
         {
-            super( executor );
+            prefix = "onami-lifecycle-" + stage.getSimpleName() + "-";
         }
 
         @Override
-        protected void doStage() throws Exception
+        public Thread newThread( Runnable runnable )
         {
-            object.shutdown();
-            try
-            {
-                if ( !object.awaitTermination( 1, TimeUnit.MINUTES ) )
-                {
-                    object.shutdownNow();
-                }
-            }
-            catch ( InterruptedException e )
-            {
-                object.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+            Thread thread = new Thread( runnable, prefix + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
         }
 
     }
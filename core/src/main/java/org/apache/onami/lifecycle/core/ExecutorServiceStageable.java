@@ -0,0 +1,162 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Stages an {@link ExecutorService} by shutting it down, waiting a bounded time
+ * for running tasks to complete before forcing the shutdown.
+ */
+final class ExecutorServiceStageable
+    extends AbstractStageable<ExecutorService>
+{
+
+    private static final long DEFAULT_TERMINATION_NANOS = TimeUnit.MINUTES.toNanos( 1 );
+
+    private static final long DRAIN_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos( 10 );
+
+    /**
+     * Maximum time to wait for running tasks to complete, in nanoseconds.
+     */
+    private final long terminationNanos;
+
+    ExecutorServiceStageable( ExecutorService executor )
+    {
+        this( executor, DEFAULT_TERMINATION_NANOS );
+    }
+
+    ExecutorServiceStageable( ExecutorService executor, long terminationNanos )
+    {
+        super( executor );
+        this.terminationNanos = terminationNanos;
+    }
+
+    @Override
+    protected void doStage()
+        throws Exception
+    {
+        object.shutdown();
+        try
+        {
+            if ( !object.awaitTermination( terminationNanos, TimeUnit.NANOSECONDS ) )
+            {
+                object.shutdownNow();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            object.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected String getOperation()
+    {
+        return "shutdown";
+    }
+
+    /**
+     * Drains the given executors together: all of them are shut down first, then awaited
+     * against a shared deadline, and the ones still running by then are forcibly shut down
+     * and reported with an {@link ExecutorTerminationTimeoutException}.
+     *
+     * @param batch        the executors stageables to drain
+     * @param timeoutNanos the maximum time to wait for all executors termination
+     * @param stageHandler the handler to track progresses
+     */
+    static void drain( List<ExecutorServiceStageable> batch, long timeoutNanos, StageHandler stageHandler )
+    {
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        Map<ExecutorServiceStageable, Long> pending = new LinkedHashMap<ExecutorServiceStageable, Long>();
+        for ( ExecutorServiceStageable stageable : batch )
+        {
+            long start = stageable.startTiming( stageHandler );
+            try
+            {
+                stageable.object.shutdown();
+            }
+            catch ( Throwable e )
+            {
+                stageable.finishTiming( stageHandler, start );
+                stageHandler.onError( stageable.object, e );
+                continue;
+            }
+            pending.put( stageable, start );
+        }
+
+        boolean interrupted = false;
+        while ( !pending.isEmpty() )
+        {
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 )
+            {
+                break;
+            }
+            try
+            {
+                pending.keySet().iterator().next().object.awaitTermination( Math.min( remaining, DRAIN_POLL_NANOS ),
+                                                                            TimeUnit.NANOSECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+                break;
+            }
+
+            for ( Iterator<Map.Entry<ExecutorServiceStageable, Long>> entries = pending.entrySet().iterator();
+                  entries.hasNext(); )
+            {
+                Map.Entry<ExecutorServiceStageable, Long> entry = entries.next();
+                ExecutorServiceStageable stageable = entry.getKey();
+                if ( stageable.object.isTerminated() )
+                {
+                    entries.remove();
+                    stageable.finishTiming( stageHandler, entry.getValue() );
+                    stageHandler.onSuccess( stageable.object );
+                }
+            }
+        }
+
+        for ( Map.Entry<ExecutorServiceStageable, Long> entry : pending.entrySet() )
+        {
+            ExecutorServiceStageable stageable = entry.getKey();
+            List<Runnable> dropped = stageable.object.shutdownNow();
+            stageable.finishTiming( stageHandler, entry.getValue() );
+            stageHandler.onError( stageable.object, new ExecutorTerminationTimeoutException(
+                format( "%s did not terminate within %d ms, %d tasks dropped", stageable,
+                        TimeUnit.NANOSECONDS.toMillis( timeoutNanos ), dropped.size() ), dropped.size() ) );
+        }
+
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
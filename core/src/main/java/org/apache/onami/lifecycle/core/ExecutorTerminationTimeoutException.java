@@ -0,0 +1,59 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reported when a registered {@link ExecutorService} did not terminate in time
+ * and had to be forcibly shut down.
+ */
+public final class ExecutorTerminationTimeoutException
+    extends TimeoutException
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private final int droppedTasks;
+
+    /**
+     * @param message      the detail message
+     * @param droppedTasks the number of tasks that never commenced execution
+     */
+    public ExecutorTerminationTimeoutException( String message, int droppedTasks )
+    {
+        super( message );
+        this.droppedTasks = droppedTasks;
+    }
+
+    /**
+     * Returns the number of queued tasks that never commenced execution,
+     * as returned by {@link ExecutorService#shutdownNow()}.
+     *
+     * @return the number of tasks dropped by the forced shutdown
+     */
+    public int getDroppedTasks()
+    {
+        return droppedTasks;
+    }
+
+}
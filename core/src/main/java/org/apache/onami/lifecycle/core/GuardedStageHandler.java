@@ -0,0 +1,101 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Forwards the outcome of a single stageable to a {@link StageHandler}, at most once:
+ * once {@link #complete()} has been invoked, i.e. the stager gave up on the stageable,
+ * late notifications from the staging thread are dropped.
+ */
+final class GuardedStageHandler
+    implements TimedStageHandler
+{
+
+    private final StageHandler delegate;
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    GuardedStageHandler( StageHandler delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Marks the stageable as completed.
+     *
+     * @return true if the stageable outcome was not reported yet, false otherwise
+     */
+    boolean complete()
+    {
+        return completed.compareAndSet( false, true );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onStart( I injectee, String operation )
+    {
+        if ( delegate instanceof TimedStageHandler && !completed.get() )
+        {
+            ( (TimedStageHandler) delegate ).onStart( injectee, operation );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onFinish( I injectee, String operation, long nanos )
+    {
+        if ( delegate instanceof TimedStageHandler && !completed.get() )
+        {
+            ( (TimedStageHandler) delegate ).onFinish( injectee, operation, nanos );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onSuccess( I injectee )
+    {
+        if ( complete() )
+        {
+            delegate.onSuccess( injectee );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, E extends Throwable> void onError( I injectee, E error )
+    {
+        if ( complete() )
+        {
+            delegate.onError( injectee, error );
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.String.format;
+
+/**
+ * Tracks the lifecycle methods invoked asynchronously after injection, see
+ * {@link LifeCycleModule#bindAsyncLifeCycle(java.util.List, com.google.inject.matcher.Matcher, InitializationBarrier)}:
+ * the injectee is handed out while its initialization runs on the executor, and the application awaits
+ * all the outstanding initializations before declaring itself ready.
+ *
+ * @since 0.2.0
+ */
+public final class InitializationBarrier
+{
+
+    private final Executor executor;
+
+    /**
+     * The initializations still running, guarded by {@code this}.
+     */
+    private final Set<Initialization> outstanding = new LinkedHashSet<Initialization>();
+
+    /**
+     * The failed initializations not reported yet, guarded by {@code this}.
+     */
+    private final List<Throwable> failures = new ArrayList<Throwable>();
+
+    /**
+     * @param executor the executor running the initializations, never shut down by the barrier
+     */
+    public InitializationBarrier( Executor executor )
+    {
+        if ( executor == null )
+        {
+            throw new IllegalArgumentException( "Executor must be specified" );
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Runs the initialization on the executor.
+     *
+     * @param description    what the initialization does, reported when it does not complete in time
+     * @param initialization the initialization, reporting its failure by throwing
+     * @throws RejectedExecutionException if the executor does not accept the initialization
+     */
+    void submit( String description, Runnable initialization )
+    {
+        final Initialization tracked = new Initialization( description, initialization );
+        synchronized ( this )
+        {
+            outstanding.add( tracked );
+        }
+        try
+        {
+            executor.execute( tracked );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            synchronized ( this )
+            {
+                outstanding.remove( tracked );
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for all the initializations submitted so far to complete.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout argument
+     * @throws InterruptedException    if interrupted while waiting
+     * @throws TimeoutException        if initializations are still running once the timeout expires
+     * @throws InitializationException if initializations failed since the previous invocation
+     */
+    public void await( long timeout, TimeUnit unit )
+        throws InterruptedException, TimeoutException, InitializationException
+    {
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+        synchronized ( this )
+        {
+            while ( !outstanding.isEmpty() )
+            {
+                long remaining = deadline - System.nanoTime();
+                if ( remaining <= 0 )
+                {
+                    throw new TimeoutException( format( "%d initialization(s) still running: %s", outstanding.size(),
+                                                        outstanding ) );
+                }
+                TimeUnit.NANOSECONDS.timedWait( this, remaining );
+            }
+            if ( !failures.isEmpty() )
+            {
+                // reported once, so that the barrier can be awaited again for later initializations
+                List<Throwable> reported = new ArrayList<Throwable>( failures );
+                failures.clear();
+                throw new InitializationException( reported );
+            }
+        }
+    }
+
+    /**
+     * @return the number of initializations still running
+     */
+    public synchronized int getOutstanding()
+    {
+        return outstanding.size();
+    }
+
+    private synchronized void completed( Initialization initialization, Throwable failure )
+    {
+        if ( failure != null )
+        {
+            failures.add( failure );
+        }
+        outstanding.remove( initialization );
+        notifyAll();
+    }
+
+    private final class Initialization
+        implements Runnable
+    {
+
+        private final String description;
+
+        private final Runnable initialization;
+
+        Initialization( String description, Runnable initialization )
+        {
+            this.description = description;
+            this.initialization = initialization;
+        }
+
+        @Override
+        public void run()
+        {
+            Throwable failure = null;
+            try
+            {
+                initialization.run();
+            }
+            catch ( Throwable t )
+            {
+                failure = t;
+            }
+            finally
+            {
+                completed( this, failure );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return description;
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by {@link InitializationBarrier#await(long, java.util.concurrent.TimeUnit)} when asynchronous
+ * initializations failed, carrying all their failures.
+ *
+ * @since 0.2.0
+ */
+public final class InitializationException
+    extends Exception
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<Throwable> failures;
+
+    /**
+     * @param failures the failures of the asynchronous initializations, at least one
+     */
+    public InitializationException( List<Throwable> failures )
+    {
+        super( failures.size() + " asynchronous initialization(s) failed, first failure: " + failures.get( 0 ),
+               failures.get( 0 ) );
+        this.failures = Collections.unmodifiableList( failures );
+    }
+
+    /**
+     * @return the failures of the asynchronous initializations, in completion order
+     */
+    public List<Throwable> getFailures()
+    {
+        return failures;
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.lang.reflect.Method;
+
+/**
+ * Receives the lifecycle methods invocations performed by {@link LifeCycleModule}
+ * while objects are provisioned.
+ * <p>
+ * Implementations are invoked on the provisioning path of every matching injectee:
+ * they are expected to return quickly and to avoid any work, such as formatting
+ * messages, when nobody is listening.
+ */
+public interface InvocationTracer
+{
+
+    /**
+     * Tracks the input method is about to be invoked on the injectee.
+     *
+     * @param injectee the injectee the method is invoked on
+     * @param method   the lifecycle method
+     */
+    <I> void beforeInvocation( I injectee, Method method );
+
+    /**
+     * Tracks the input method has been successfully invoked on the injectee.
+     *
+     * @param injectee the injectee the method has been invoked on
+     * @param method   the lifecycle method
+     */
+    <I> void afterInvocation( I injectee, Method method );
+
+}
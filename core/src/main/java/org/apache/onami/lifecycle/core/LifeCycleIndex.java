@@ -0,0 +1,141 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reader of the index of the classes declaring annotated methods, generated at compile time by the
+ * {@code org.apache.onami.lifecycle.processor.LifeCycleIndexProcessor}.
+ * <p>
+ * Every index resource visible from a class loader is read once, the listed classes are
+ * then scanned ahead of time by {@link AnnotatedMethodsCache#preload(ClassLoader, java.util.concurrent.Executor)}.
+ */
+final class LifeCycleIndex
+{
+
+    /**
+     * The index location, must be kept aligned with the annotation processor.
+     */
+    static final String INDEX_RESOURCE = "META-INF/onami/lifecycle.index";
+
+    private static final Logger LOGGER = Logger.getLogger( LifeCycleIndex.class.getName() );
+
+    private static final Map<ClassLoader, LifeCycleIndex> INDEXES = new WeakHashMap<ClassLoader, LifeCycleIndex>();
+
+    /**
+     * The binary names of the indexed classes.
+     */
+    private final Set<String> classNames;
+
+    LifeCycleIndex( Set<String> classNames )
+    {
+        this.classNames = classNames;
+    }
+
+    /**
+     * Returns the index of the classes visible from the input class loader.
+     *
+     * @param classLoader the class loader the index resources are read from.
+     * @return the index, empty if no index resource could be found.
+     */
+    static LifeCycleIndex get( ClassLoader classLoader )
+    {
+        synchronized ( INDEXES )
+        {
+            LifeCycleIndex index = INDEXES.get( classLoader );
+            if ( index == null )
+            {
+                index = read( classLoader );
+                INDEXES.put( classLoader, index );
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return the binary names of the indexed classes, i.e. the classes declaring annotated methods.
+     */
+    Set<String> getClassNames()
+    {
+        return Collections.unmodifiableSet( classNames );
+    }
+
+    static LifeCycleIndex read( ClassLoader classLoader )
+    {
+        Set<String> classNames = new LinkedHashSet<String>();
+        try
+        {
+            Enumeration<URL> resources = classLoader.getResources( INDEX_RESOURCE );
+            while ( resources.hasMoreElements() )
+            {
+                read( resources.nextElement(), classNames );
+            }
+        }
+        catch ( IOException e )
+        {
+            LOGGER.log( Level.WARNING, "Lifecycle index could not be read, classes are scanned on first use", e );
+            classNames.clear();
+        }
+        return new LifeCycleIndex( classNames );
+    }
+
+    private static void read( URL resource, Set<String> classNames )
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader( new InputStreamReader( resource.openStream(), "UTF-8" ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                line = line.trim();
+                if ( line.length() > 0 && !line.startsWith( "#" ) )
+                {
+                    classNames.add( line );
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return classNames.toString();
+    }
+
+}
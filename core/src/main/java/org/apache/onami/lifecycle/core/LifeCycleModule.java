@@ -32,6 +32,8 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.*;
 
 import static com.google.inject.matcher.Matchers.any;
@@ -40,6 +42,10 @@ import static java.util.Arrays.asList;
 
 /**
  * Guice module to register methods to be invoked after injection is complete.
+ * <p>
+ * Methods returning a {@code Future} or a {@code CompletionStage} are waited for before the
+ * injectee is handed out, unless they are bound to run asynchronously, see
+ * {@link #bindAsyncLifeCycle(List, Matcher, InitializationBarrier)}.
  */
 public abstract class LifeCycleModule
     extends AbstractModule
@@ -53,6 +59,59 @@ public abstract class LifeCycleModule
 
     private final Logger  logger = Logger.getLogger(getClass().getName());
 
+    private InvocationTracer tracer = new NoOpInvocationTracer();
+
+    private Executor indexPreloading;
+
+    private boolean indexPreloaded;
+
+    /**
+     * Sets the tracer notified around lifecycle methods invocations, the default one doesn't track anything.
+     * The tracer has to be set before the lifecycle listeners are bound.
+     *
+     * @param tracer the tracer notified around lifecycle methods invocations
+     */
+    public final void setInvocationTracer( InvocationTracer tracer )
+    {
+        if ( tracer == null )
+        {
+            throw new IllegalArgumentException( "Tracer must be specified" );
+        }
+        this.tracer = tracer;
+    }
+
+    /**
+     * Enables the index preloading: the classes listed in the index generated at compile time by the
+     * {@code org.apache.onami.lifecycle.processor.LifeCycleIndexProcessor} are scanned ahead of time on the given
+     * executor once the first lifecycle listener is bound, so that the listeners find their lifecycle methods
+     * already scanned while the injector is created, see {@link AnnotatedMethodsCache#preload(ClassLoader, Executor)}.
+     * The index is read from the class loader of the module. It has to be set before the lifecycle listeners
+     * are bound, the default is not to preload anything.
+     *
+     * @param executor the executor scanning the indexed classes
+     * @since 0.2.0
+     */
+    public final void setIndexPreloading( Executor executor )
+    {
+        if ( executor == null )
+        {
+            throw new IllegalArgumentException( "Executor must be specified" );
+        }
+        this.indexPreloading = executor;
+    }
+
+    /**
+     * Starts the index preloading, once, if enabled.
+     */
+    final void preloadIndex()
+    {
+        if ( indexPreloading != null && !indexPreloaded )
+        {
+            indexPreloaded = true;
+            AnnotatedMethodsCache.preload( getClass().getClassLoader(), indexPreloading );
+        }
+    }
+
     /**
      * Binds lifecycle listener.
      */
@@ -65,6 +124,8 @@ public abstract class LifeCycleModule
     {
         logger.info("Lifecycle - bind to " + clz.getName() + " with " + mtd);
 
+        final InvocationTracer tracer = this.tracer;
+
         bindListener( new AbstractMatcher<TypeLiteral>()
         {
             public boolean matches( TypeLiteral  tl )
@@ -78,19 +139,20 @@ public abstract class LifeCycleModule
                 try
                 {
                     final Method method = type.getRawType().getMethod( mtd, (Class[]) null );
+                    final MethodInvoker invoker = new MethodInvoker( method );
 
                     encounter.register( new InjectionListener<I>()
                     {
                         @Override
                         public void afterInjection(I injectee)
                         {
-                            logger.info("Lifecycle - before invoke " + mtd + " for " + injectee);
+                            tracer.beforeInvocation( injectee, method );
 
                             try
                             {
-                                method.invoke( injectee );
+                                invoker.invokeAndAwait( injectee );
 
-                                logger.info("Lifecycle - after invoke " + mtd + " for " + injectee);
+                                tracer.afterInvocation( injectee, method );
 
                                 if (handler != null)
                                 {
@@ -110,6 +172,11 @@ public abstract class LifeCycleModule
                             {
                                 throw new ProvisionException( format( "An error occurred while invoking %s on %s", method, injectee ), e.getCause() );
                             }
+                            catch ( InterruptedException e )
+                            {
+                                Thread.currentThread().interrupt();
+                                throw new ProvisionException( format( "Interrupted while waiting for %s on %s", method, injectee ), e );
+                            }
                             catch ( Throwable th )
                             {
                                 throw new ProvisionException( format( "An error occurred while invoking %s on %s", method, injectee ), th );
@@ -164,7 +231,34 @@ public abstract class LifeCycleModule
 
     protected final void bindLifeCycle( List<? extends Class<? extends Annotation>> annotations, Matcher<? super TypeLiteral<?>> typeMatcher, final InvocationResultHandler  handler )
     {
-        logger.info("Lifecycle - bind to " + annotations + " with matcher " + typeMatcher);
+        bindLifeCycle( annotations, typeMatcher, handler, null );
+    }
+
+    /**
+     * Binds lifecycle listener invoking the lifecycle methods asynchronously: the injectee is handed out
+     * while they run on the barrier executor, the application awaits them through the barrier.
+     *
+     * @param annotations the lifecycle annotations to be searched in the order to be searched.
+     * @param typeMatcher the filter for injectee types.
+     * @param barrier     tracks the asynchronous invocations.
+     * @since 0.2.0
+     */
+    protected final void bindAsyncLifeCycle( List<? extends Class<? extends Annotation>> annotations, Matcher<? super TypeLiteral<?>> typeMatcher, InitializationBarrier barrier )
+    {
+        if ( barrier == null )
+        {
+            throw new IllegalArgumentException( "Initialization barrier must be specified" );
+        }
+        bindLifeCycle( annotations, typeMatcher, null, barrier );
+    }
+
+    private void bindLifeCycle( List<? extends Class<? extends Annotation>> annotations, Matcher<? super TypeLiteral<?>> typeMatcher, final InvocationResultHandler  handler, final InitializationBarrier barrier )
+    {
+        logger.info("Lifecycle - bind to " + annotations + " with matcher " + typeMatcher
+            + ( barrier != null ? ", asynchronously" : "" ));
+        preloadIndex();
+
+        final InvocationTracer tracer = this.tracer;
 
         bindListener( typeMatcher, new AbstractMethodTypeListener( annotations )
         {
@@ -173,49 +267,39 @@ public abstract class LifeCycleModule
             protected <I> void hear( final Method method, TypeLiteral<I> parentType, TypeEncounter<I> encounter,
                                      final Class<? extends Annotation> annotationType )
             {
+                final MethodInvoker invoker = new MethodInvoker( method );
                 encounter.register( new InjectionListener<I>()
                 {
 
                     @Override
-                    public void afterInjection( I injectee )
+                    public void afterInjection( final I injectee )
                     {
-                        logger.info("Lifecycle - before invoke " + method.getName() + " for " + injectee);
+                        if ( barrier == null )
+                        {
+                            invoke( invoker, annotationType, injectee, tracer, handler );
+                            return;
+                        }
 
                         try
                         {
-                            method.invoke( injectee );
+                            barrier.submit( format( "@%s %s on %s", annotationType.getName(), method, injectee ),
+                                            new Runnable()
+                                            {
 
-                            logger.info("Lifecycle - after invoke " + method.getName() + " for " + injectee);
+                                                @Override
+                                                public void run()
+                                                {
+                                                    invoke( invoker, annotationType, injectee, tracer, handler );
+                                                }
 
-                            if (handler != null)
-                            {
-                                handler.afterInvocation(injectee);
-                            }
-                        }
-                        catch ( IllegalArgumentException e )
-                        {
-                            // should not happen, anyway...
-                            throw new ProvisionException(
-                                format( "Method @%s %s requires arguments", annotationType.getName(), method ), e );
+                                            } );
                         }
-                        catch ( IllegalAccessException e )
+                        catch ( RejectedExecutionException e )
                         {
                             throw new ProvisionException(
-                                format( "Impossible to access to @%s %s on %s", annotationType.getName(), method,
+                                format( "Impossible to schedule @%s %s on %s", annotationType.getName(), method,
                                         injectee ), e );
                         }
-                        catch ( InvocationTargetException e )
-                        {
-                            throw new ProvisionException(
-                                format( "An error occurred while invoking @%s %s on %s", annotationType.getName(),
-                                        method, injectee ), e.getCause() );
-                        }
-                        catch ( Throwable th )
-                        {
-                            throw new ProvisionException(
-                                format( "An error occurred while invoking @%s %s on %s", annotationType.getName(),
-                                        method, injectee ), th );
-                        }
                     }
 
                 } );
@@ -224,4 +308,54 @@ public abstract class LifeCycleModule
         } );
     }
 
+    private static <I> void invoke( MethodInvoker invoker, Class<? extends Annotation> annotationType, I injectee,
+                                    InvocationTracer tracer, InvocationResultHandler handler )
+    {
+        Method method = invoker.getMethod();
+        tracer.beforeInvocation( injectee, method );
+
+        try
+        {
+            invoker.invokeAndAwait( injectee );
+
+            tracer.afterInvocation( injectee, method );
+
+            if (handler != null)
+            {
+                handler.afterInvocation(injectee);
+            }
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // should not happen, anyway...
+            throw new ProvisionException(
+                format( "Method @%s %s requires arguments", annotationType.getName(), method ), e );
+        }
+        catch ( IllegalAccessException e )
+        {
+            throw new ProvisionException(
+                format( "Impossible to access to @%s %s on %s", annotationType.getName(), method,
+                        injectee ), e );
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw new ProvisionException(
+                format( "An error occurred while invoking @%s %s on %s", annotationType.getName(),
+                        method, injectee ), e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ProvisionException(
+                format( "Interrupted while waiting for @%s %s on %s", annotationType.getName(),
+                        method, injectee ), e );
+        }
+        catch ( Throwable th )
+        {
+            throw new ProvisionException(
+                format( "An error occurred while invoking @%s %s on %s", annotationType.getName(),
+                        method, injectee ), th );
+        }
+    }
+
 }
@@ -0,0 +1,186 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import com.google.inject.Key;
+import com.google.inject.OutOfScopeException;
+import com.google.inject.Provider;
+import com.google.inject.Scope;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * A thread bound {@link Scope}, such as a request or a session scope, staging the objects provisioned
+ * into a scope instance when it is exited.
+ * <p>
+ * Bind it with {@code bindScope( RequestScoped.class, scope )} in a {@link LifeCycleStageModule} managing
+ * the same stage: the stage methods of the objects provisioned into a scope instance are registered in
+ * a stager of that scope instance, created on first use, rather than in the module stager, and are
+ * staged in reverse provisioning order by {@link #exit()}. The unscoped objects created meanwhile,
+ * the dependencies of the scoped objects for instance, are registered in the module stager as usual.
+ *
+ * @param <A> the stage run when a scope instance is exited
+ */
+public class LifeCycleScope<A>
+    implements Scope
+{
+
+    private final Class<A> stage;
+
+    private final ThreadLocal<ScopeInstance<A>> current = new ThreadLocal<ScopeInstance<A>>();
+
+    /**
+     * Creates a new scope.
+     *
+     * @param stage the stage run when a scope instance is exited, e.g. {@code PreDestroy.class}
+     */
+    public LifeCycleScope( Class<A> stage )
+    {
+        this.stage = stage;
+    }
+
+    /**
+     * Enters a new scope instance on the current thread.
+     */
+    public void enter()
+    {
+        if ( current.get() != null )
+        {
+            throw new IllegalStateException( format( "A scope instance is already in progress for stage %s",
+                                                     stage.getName() ) );
+        }
+        current.set( new ScopeInstance<A>() );
+    }
+
+    /**
+     * Exits the scope instance of the current thread, staging its objects.
+     */
+    public void exit()
+    {
+        exit( new NoOpStageHandler() );
+    }
+
+    /**
+     * Exits the scope instance of the current thread, staging its objects.
+     *
+     * @param stageHandler the hook to track objects staging
+     */
+    public void exit( StageHandler stageHandler )
+    {
+        ScopeInstance<A> instance = current.get();
+        if ( instance == null )
+        {
+            throw new IllegalStateException( format( "No scope instance in progress for stage %s",
+                                                     stage.getName() ) );
+        }
+        current.remove();
+        if ( instance.stager != null )
+        {
+            instance.stager.stage( stageHandler );
+        }
+    }
+
+    /**
+     * @return true if a scope instance is in progress on the current thread
+     */
+    public boolean isActive()
+    {
+        return current.get() != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public <T> Provider<T> scope( final Key<T> key, final Provider<T> unscoped )
+    {
+        return new Provider<T>()
+        {
+            public T get()
+            {
+                ScopeInstance<A> instance = current.get();
+                if ( instance == null )
+                {
+                    throw new OutOfScopeException( format( "Cannot access %s outside of a scoping block", key ) );
+                }
+
+                @SuppressWarnings( "unchecked" ) // the value was provided for this key
+                T value = (T) instance.values.get( key );
+                if ( value == null && !instance.values.containsKey( key ) )
+                {
+                    ProvisionFrame frame = ProvisionFrame.push( stage );
+                    List<Stageable> stageables;
+                    try
+                    {
+                        value = unscoped.get();
+                    }
+                    finally
+                    {
+                        stageables = frame.pop( value );
+                    }
+                    instance.values.put( key, value );
+                    for ( Stageable stageable : stageables )
+                    {
+                        instance.getStager( stage ).register( stageable );
+                    }
+                }
+                return value;
+            }
+
+            @Override
+            public String toString()
+            {
+                return format( "%s[%s]", unscoped, LifeCycleScope.this );
+            }
+        };
+    }
+
+    @Override
+    public String toString()
+    {
+        return format( "LifeCycleScope(%s)", stage.getSimpleName() );
+    }
+
+    private static final class ScopeInstance<A>
+    {
+
+        final Map<Key<?>, Object> values = new HashMap<Key<?>, Object>();
+
+        /**
+         * Created on first registration, scope instances without stage methods do not pay for it.
+         */
+        DefaultStager<A> stager;
+
+        DefaultStager<A> getStager( Class<A> stage )
+        {
+            if ( stager == null )
+            {
+                stager = new DefaultStager<A>( stage, DefaultStager.Order.FIRST_IN_LAST_OUT );
+            }
+            return stager;
+        }
+
+    }
+
+}
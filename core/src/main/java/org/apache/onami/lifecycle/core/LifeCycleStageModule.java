@@ -107,22 +107,23 @@ public abstract class LifeCycleStageModule
         {
             //  annotation based lifecycle supported
             Class<? extends Annotation>  clz = (Class<? extends Annotation>) stager.getStage();
+            preloadIndex();
 
             bindListener( binding.typeMatcher, new AbstractMethodTypeListener( asList( clz ) )
             {
                 @Override
-                protected <I> void hear( final Method stageMethod, final TypeLiteral<I> parentType,
+                protected <I> void hear( final Method method, final TypeLiteral<I> parentType,
                                          final TypeEncounter<I> encounter,
                                          final Class<? extends Annotation> annotationType )
                 {
+                    final MethodInvoker stageMethod = new MethodInvoker( method );
                     encounter.register( new InjectionListener<I>()
                     {
                         @Override
                         public void afterInjection( I injectee )
                         {
                             Stageable stageable = new StageableMethod( stageMethod, injectee );
-                            stager.register( stageable );
-                            typeMapper.registerType( stageable, parentType );
+                            ProvisionFrame.register( stager, typeMapper, stageable, parentType, injectee );
                         }
                     } );
                 }
@@ -137,7 +138,8 @@ public abstract class LifeCycleStageModule
                 {
                     try
                     {
-                        final Method stageMethod = type.getRawType().getMethod( binding.method, (Class[]) null );
+                        final MethodInvoker stageMethod =
+                            new MethodInvoker( type.getRawType().getMethod( binding.method, (Class[]) null ) );
 
                         encounter.register( new InjectionListener<I>()
                         {
@@ -145,8 +147,7 @@ public abstract class LifeCycleStageModule
                             public void afterInjection(I injectee)
                             {
                                 Stageable stageable = new StageableMethod( stageMethod, injectee );
-                                stager.register( stageable );
-                                typeMapper.registerType( stageable, type );
+                                ProvisionFrame.register( stager, typeMapper, stageable, type, injectee );
                             }
                         } );
                     }
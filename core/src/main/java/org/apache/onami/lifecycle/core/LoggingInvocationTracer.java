@@ -0,0 +1,101 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link InvocationTracer} that logs lifecycle methods invocations through
+ * {@code java.util.logging}.
+ * <p>
+ * Messages are formatted by the logging framework only once the record is published,
+ * so neither the injectee {@code toString()} nor any concatenation is performed
+ * when the configured level is not loggable.
+ */
+public final class LoggingInvocationTracer
+    implements InvocationTracer
+{
+
+    private final Logger logger;
+
+    private final Level level;
+
+    /**
+     * Creates a new tracer that logs at {@link Level#FINE} on the {@link LifeCycleModule} logger.
+     */
+    public LoggingInvocationTracer()
+    {
+        this( Level.FINE );
+    }
+
+    /**
+     * Creates a new tracer that logs at the given level on the {@link LifeCycleModule} logger.
+     *
+     * @param level the level invocations are logged at
+     */
+    public LoggingInvocationTracer( Level level )
+    {
+        this( Logger.getLogger( LifeCycleModule.class.getName() ), level );
+    }
+
+    /**
+     * Creates a new tracer that logs at the given level on the given logger.
+     *
+     * @param logger the logger invocations are logged on
+     * @param level  the level invocations are logged at
+     */
+    public LoggingInvocationTracer( Logger logger, Level level )
+    {
+        if ( logger == null || level == null )
+        {
+            throw new IllegalArgumentException( "Logger and level must be specified" );
+        }
+        this.logger = logger;
+        this.level = level;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void beforeInvocation( I injectee, Method method )
+    {
+        if ( logger.isLoggable( level ) )
+        {
+            logger.log( level, "Lifecycle - before invoke {0} for {1}", new Object[]{ method.getName(), injectee } );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void afterInvocation( I injectee, Method method )
+    {
+        if ( logger.isLoggable( level ) )
+        {
+            logger.log( level, "Lifecycle - after invoke {0} for {1}", new Object[]{ method.getName(), injectee } );
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Invokes a no-argument lifecycle method on injectees.
+ * <p>
+ * Invokers are created once per heard type and shared by all the injectees of that type:
+ * the method is made accessible when the invoker is created, so that the per-injectee
+ * invocation neither repeats the privileged access check nor allocates the argument array.
+ * <p>
+ * Methods declared to return a {@link Future} or a {@code java.util.concurrent.CompletionStage}
+ * are asynchronous: their result tells when the lifecycle operation they started is over.
+ * {@code CompletionStage} is resolved reflectively, so the library still runs on Java 6.
+ */
+final class MethodInvoker
+{
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static final Class<?> COMPLETION_STAGE = loadClass( "java.util.concurrent.CompletionStage" );
+
+    private static final Method TO_COMPLETABLE_FUTURE = getMethod( COMPLETION_STAGE, "toCompletableFuture" );
+
+    /**
+     * The lifecycle method.
+     */
+    private final Method method;
+
+    /**
+     * True if the method returns a {@link Future} or a {@code CompletionStage}.
+     */
+    private final boolean asynchronous;
+
+    /**
+     * Creates a new invoker for the given method.
+     *
+     * @param method the lifecycle method to be invoked.
+     */
+    MethodInvoker( final Method method )
+    {
+        this.method = method;
+        this.asynchronous = isAsynchronous( method.getReturnType() );
+        try
+        {
+            AccessController.doPrivileged( new PrivilegedAction<Void>()
+            {
+
+                @Override
+                public Void run()
+                {
+                    method.setAccessible( true );
+                    return null;
+                }
+
+            } );
+        }
+        catch ( SecurityException e )
+        {
+            // not allowed, the invocation will report the access failure
+        }
+    }
+
+    /**
+     * Invokes the lifecycle method on the input injectee.
+     *
+     * @param injectee the injectee the method has to be invoked on.
+     * @return the value returned by the method.
+     * @throws IllegalAccessException    if the method is not accessible.
+     * @throws InvocationTargetException if the method threw an exception.
+     */
+    Object invoke( Object injectee )
+        throws IllegalAccessException, InvocationTargetException
+    {
+        return method.invoke( injectee, NO_ARGS );
+    }
+
+    /**
+     * Invokes the lifecycle method on the input injectee and, if the method is asynchronous,
+     * waits for the operation it started to complete.
+     *
+     * @param injectee the injectee the method has to be invoked on.
+     * @throws IllegalAccessException    if the method is not accessible.
+     * @throws InvocationTargetException if the method, or the operation it started, failed.
+     * @throws InterruptedException      if the current thread was interrupted while waiting.
+     */
+    void invokeAndAwait( Object injectee )
+        throws IllegalAccessException, InvocationTargetException, InterruptedException
+    {
+        Object result = invoke( injectee );
+        if ( asynchronous )
+        {
+            Future<?> future = toFuture( result );
+            if ( future != null )
+            {
+                try
+                {
+                    future.get();
+                }
+                catch ( ExecutionException e )
+                {
+                    throw new InvocationTargetException( e.getCause() );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the method returns a {@link Future} or a {@code CompletionStage}.
+     */
+    boolean isAsynchronous()
+    {
+        return asynchronous;
+    }
+
+    /**
+     * Adapts the result of an asynchronous method to a {@link Future}.
+     *
+     * @param result the value returned by the method.
+     * @return the future of the operation, null if the method returned null.
+     * @throws InvocationTargetException if the {@code CompletionStage} could not be converted.
+     */
+    static Future<?> toFuture( Object result )
+        throws InvocationTargetException
+    {
+        if ( result instanceof Future )
+        {
+            return (Future<?>) result;
+        }
+        if ( result != null && TO_COMPLETABLE_FUTURE != null && COMPLETION_STAGE.isInstance( result ) )
+        {
+            try
+            {
+                return (Future<?>) TO_COMPLETABLE_FUTURE.invoke( result, NO_ARGS );
+            }
+            catch ( IllegalAccessException e )
+            {
+                throw new InvocationTargetException( e );
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAsynchronous( Class<?> returnType )
+    {
+        return Future.class.isAssignableFrom( returnType )
+            || ( COMPLETION_STAGE != null && COMPLETION_STAGE.isAssignableFrom( returnType ) );
+    }
+
+    private static Class<?> loadClass( String name )
+    {
+        try
+        {
+            return Class.forName( name );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            // older runtime
+            return null;
+        }
+    }
+
+    private static Method getMethod( Class<?> type, String name )
+    {
+        if ( type == null )
+        {
+            return null;
+        }
+        try
+        {
+            return type.getMethod( name );
+        }
+        catch ( NoSuchMethodException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return the lifecycle method.
+     */
+    Method getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return method.toString();
+    }
+
+}
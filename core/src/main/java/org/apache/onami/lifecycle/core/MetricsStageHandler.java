@@ -0,0 +1,466 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link TimedStageHandler} that records staging latencies per injectee type and per stage method,
+ * as well as the slowest stagings.
+ * <p>
+ * It can be passed to any {@link Stager}, including concurrent ones, and read at any time through
+ * {@link #snapshot()}; outcomes are forwarded to an optional delegate {@link StageHandler}.
+ * Latencies are collected in histograms of power of two nanoseconds buckets: bucket {@code i}
+ * counts the stagings which took from {@code 2^i} (inclusive) to {@code 2^(i+1)} (exclusive) nanoseconds.
+ */
+public final class MetricsStageHandler
+    implements TimedStageHandler
+{
+
+    private static final int DEFAULT_SLOWEST_SIZE = 10;
+
+    private static final int BUCKETS = 64;
+
+    private final StageHandler delegate;
+
+    private final int slowestSize;
+
+    private final ConcurrentMap<String, Histogram> types = new ConcurrentHashMap<String, Histogram>();
+
+    private final ConcurrentMap<String, Histogram> methods = new ConcurrentHashMap<String, Histogram>();
+
+    /**
+     * Min-heap of the slowest stagings, the fastest of them on top.
+     */
+    private final PriorityQueue<Sample> slowest = new PriorityQueue<Sample>();
+
+    /**
+     * Creates a new handler that keeps track of the 10 slowest stagings.
+     */
+    public MetricsStageHandler()
+    {
+        this( new NoOpStageHandler(), DEFAULT_SLOWEST_SIZE );
+    }
+
+    /**
+     * Creates a new handler.
+     *
+     * @param delegate    the handler staging outcomes are forwarded to
+     * @param slowestSize the number of slowest stagings to keep track of
+     */
+    public MetricsStageHandler( StageHandler delegate, int slowestSize )
+    {
+        if ( delegate == null )
+        {
+            throw new IllegalArgumentException( "Delegate handler must be specified" );
+        }
+        if ( slowestSize < 0 )
+        {
+            throw new IllegalArgumentException( "Slowest stagings size cannot be negative: " + slowestSize );
+        }
+        this.delegate = delegate;
+        this.slowestSize = slowestSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onStart( I injectee, String operation )
+    {
+        // durations are provided on finish
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onFinish( I injectee, String operation, long nanos )
+    {
+        String type = injectee.getClass().getName();
+        histogram( types, type ).record( nanos );
+        histogram( methods, type + '#' + operation ).record( nanos );
+
+        if ( slowestSize > 0 )
+        {
+            synchronized ( slowest )
+            {
+                if ( slowest.size() < slowestSize )
+                {
+                    slowest.add( new Sample( type, operation, nanos ) );
+                }
+                else if ( slowest.peek().nanos < nanos )
+                {
+                    slowest.poll();
+                    slowest.add( new Sample( type, operation, nanos ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onSuccess( I injectee )
+    {
+        delegate.onSuccess( injectee );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, E extends Throwable> void onError( I injectee, E error )
+    {
+        delegate.onError( injectee, error );
+    }
+
+    /**
+     * Returns a point-in-time copy of the recorded metrics.
+     *
+     * @return a point-in-time copy of the recorded metrics
+     */
+    public Snapshot snapshot()
+    {
+        List<Sample> slowestCopy;
+        synchronized ( slowest )
+        {
+            slowestCopy = new ArrayList<Sample>( slowest );
+        }
+        Collections.sort( slowestCopy, Collections.reverseOrder() );
+        return new Snapshot( snapshot( types ), snapshot( methods ), slowestCopy );
+    }
+
+    /**
+     * Discards all the recorded metrics.
+     */
+    public void reset()
+    {
+        types.clear();
+        methods.clear();
+        synchronized ( slowest )
+        {
+            slowest.clear();
+        }
+    }
+
+    private static Histogram histogram( ConcurrentMap<String, Histogram> histograms, String key )
+    {
+        Histogram histogram = histograms.get( key );
+        if ( histogram == null )
+        {
+            Histogram newHistogram = new Histogram();
+            histogram = histograms.putIfAbsent( key, newHistogram );
+            if ( histogram == null )
+            {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    private static Map<String, Timing> snapshot( ConcurrentMap<String, Histogram> histograms )
+    {
+        Map<String, Timing> timings = new HashMap<String, Timing>();
+        for ( Map.Entry<String, Histogram> entry : histograms.entrySet() )
+        {
+            timings.put( entry.getKey(), entry.getValue().snapshot() );
+        }
+        return Collections.unmodifiableMap( timings );
+    }
+
+    private static final class Histogram
+    {
+
+        private final long[] buckets = new long[BUCKETS];
+
+        private long count;
+
+        private long totalNanos;
+
+        private long minNanos = Long.MAX_VALUE;
+
+        private long maxNanos;
+
+        synchronized void record( long nanos )
+        {
+            long value = Math.max( 0L, nanos );
+            buckets[bucketOf( value )]++;
+            count++;
+            totalNanos += value;
+            minNanos = Math.min( minNanos, value );
+            maxNanos = Math.max( maxNanos, value );
+        }
+
+        synchronized Timing snapshot()
+        {
+            return new Timing( count, totalNanos, minNanos, maxNanos, buckets.clone() );
+        }
+
+        private static int bucketOf( long nanos )
+        {
+            return nanos == 0L ? 0 : 63 - Long.numberOfLeadingZeros( nanos );
+        }
+
+    }
+
+    /**
+     * Latencies recorded for an injectee type or a stage method.
+     */
+    public static final class Timing
+    {
+
+        private final long count;
+
+        private final long totalNanos;
+
+        private final long minNanos;
+
+        private final long maxNanos;
+
+        private final long[] buckets;
+
+        Timing( long count, long totalNanos, long minNanos, long maxNanos, long[] buckets )
+        {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.minNanos = minNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        /**
+         * @return the number of stagings
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return the cumulated staging time, in nanoseconds
+         */
+        public long getTotalNanos()
+        {
+            return totalNanos;
+        }
+
+        /**
+         * @return the fastest staging time, in nanoseconds
+         */
+        public long getMinNanos()
+        {
+            return minNanos;
+        }
+
+        /**
+         * @return the slowest staging time, in nanoseconds
+         */
+        public long getMaxNanos()
+        {
+            return maxNanos;
+        }
+
+        /**
+         * @return the mean staging time, in nanoseconds
+         */
+        public long getMeanNanos()
+        {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * Returns the histogram buckets counts, bucket {@code i} counts the stagings which took
+         * from {@code 2^i} (inclusive) to {@code 2^(i+1)} (exclusive) nanoseconds.
+         *
+         * @return a copy of the histogram buckets counts
+         */
+        public long[] getBuckets()
+        {
+            return buckets.clone();
+        }
+
+        /**
+         * Returns an upper bound of the staging time under which the given fraction of stagings completed,
+         * accurate to the histogram bucket.
+         *
+         * @param quantile the fraction of stagings, between 0 and 1
+         * @return an upper bound of the quantile staging time, in nanoseconds
+         */
+        public long getQuantileNanos( double quantile )
+        {
+            if ( quantile < 0 || quantile > 1 )
+            {
+                throw new IllegalArgumentException( "Quantile must be between 0 and 1: " + quantile );
+            }
+            long threshold = (long) Math.ceil( quantile * count );
+            long seen = 0;
+            for ( int i = 0; i < buckets.length; i++ )
+            {
+                seen += buckets[i];
+                if ( seen >= threshold && seen > 0 )
+                {
+                    long upperBound = i >= 62 ? Long.MAX_VALUE : ( 1L << ( i + 1 ) ) - 1;
+                    return Math.min( upperBound, maxNanos );
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return "count=" + count + ", mean=" + getMeanNanos() + "ns, min=" + minNanos + "ns, max=" + maxNanos
+                + "ns";
+        }
+
+    }
+
+    /**
+     * A single staging, kept among the slowest ones.
+     */
+    public static final class Sample
+        implements Comparable<Sample>
+    {
+
+        private final String type;
+
+        private final String operation;
+
+        private final long nanos;
+
+        Sample( String type, String operation, long nanos )
+        {
+            this.type = type;
+            this.operation = operation;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return the staged injectee class name
+         */
+        public String getType()
+        {
+            return type;
+        }
+
+        /**
+         * @return the staging operation, i.e. the stage method name
+         */
+        public String getOperation()
+        {
+            return operation;
+        }
+
+        /**
+         * @return the staging time, in nanoseconds
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compareTo( Sample other )
+        {
+            return nanos < other.nanos ? -1 : ( nanos == other.nanos ? 0 : 1 );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return type + '#' + operation + "=" + nanos + "ns";
+        }
+
+    }
+
+    /**
+     * Point-in-time copy of the metrics recorded by a {@link MetricsStageHandler}.
+     */
+    public static final class Snapshot
+    {
+
+        private final Map<String, Timing> types;
+
+        private final Map<String, Timing> methods;
+
+        private final List<Sample> slowest;
+
+        Snapshot( Map<String, Timing> types, Map<String, Timing> methods, List<Sample> slowest )
+        {
+            this.types = types;
+            this.methods = methods;
+            this.slowest = Collections.unmodifiableList( slowest );
+        }
+
+        /**
+         * @return the latencies per injectee class name
+         */
+        public Map<String, Timing> getTypes()
+        {
+            return types;
+        }
+
+        /**
+         * @return the latencies per stage method, keyed by {@code <class name>#<method name>}
+         */
+        public Map<String, Timing> getMethods()
+        {
+            return methods;
+        }
+
+        /**
+         * @return the slowest stagings, slowest first
+         */
+        public List<Sample> getSlowest()
+        {
+            return slowest;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return "types=" + types + ", methods=" + methods + ", slowest=" + slowest;
+        }
+
+    }
+
+}
@@ -0,0 +1,456 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.google.inject.ConfigurationException;
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.Dependency;
+import com.google.inject.spi.InjectionPoint;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link DisposingStager} that stages independent injectees concurrently.
+ * <p>
+ * The stager builds the dependency graph of the registered injectee types from their
+ * Guice injection points and stages it in reverse dependency order: an injectee is
+ * staged only after every registered injectee that depends on it has been staged, while
+ * unrelated subtrees are staged in parallel on the configured executor. Stageables
+ * registered without a type, such as {@link Closeable}s and {@link ExecutorService}s,
+ * are staged concurrently once the typed injectees are done.
+ * <p>
+ * Types are registered through {@link #registerType(Stageable, TypeLiteral)}, so the
+ * stager has to be bound as its own mapper:
+ * <pre>
+ * bindStager( stager ).mappingWith( stager );
+ * </pre>
+ * The {@link StageHandler} passed to {@link #stage(StageHandler)} is invoked from
+ * the executor threads, so it must be thread-safe.
+ *
+ * @since 0.2.0
+ */
+public class ParallelStager<A>
+    implements DisposingStager<A>, StageableTypeMapper
+{
+
+    private final Class<A> stage;
+
+    /**
+     * The executor supplied by the caller, {@code null} when the stager owns its threads.
+     */
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    /**
+     * Stageables registered for each injectee type.
+     */
+    private final ConcurrentMap<TypeLiteral<?>, Set<Stageable>> reverseLookup =
+        new ConcurrentHashMap<TypeLiteral<?>, Set<Stageable>>();
+
+    /**
+     * Stageables not (yet) associated to any type.
+     */
+    private final Set<Stageable> untyped = Collections.newSetFromMap( new ConcurrentHashMap<Stageable, Boolean>() );
+
+    /**
+     * @param stage the annotation that specifies this stage
+     */
+    public ParallelStager( Class<A> stage )
+    {
+        this( stage, Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * @param stage       the annotation that specifies this stage
+     * @param parallelism the number of threads used while staging
+     */
+    public ParallelStager( Class<A> stage, int parallelism )
+    {
+        if ( parallelism < 1 )
+        {
+            throw new IllegalArgumentException( "Parallelism must be positive: " + parallelism );
+        }
+        this.stage = stage;
+        this.executor = null;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param stage    the annotation that specifies this stage
+     * @param executor the executor running the stageables, it is not shut down by the stager
+     */
+    public ParallelStager( Class<A> stage, ExecutorService executor )
+    {
+        if ( executor == null )
+        {
+            throw new IllegalArgumentException( "Argument 'executor' must not be null." );
+        }
+        this.stage = stage;
+        this.executor = executor;
+        this.parallelism = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void register( Stageable stageable )
+    {
+        untyped.add( stageable );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void registerType( Stageable stageable, TypeLiteral<I> parentType )
+    {
+        Set<Stageable> newSet = Collections.newSetFromMap( new ConcurrentHashMap<Stageable, Boolean>() );
+        Set<Stageable> oldSet = reverseLookup.putIfAbsent( parentType, newSet );
+        ( oldSet != null ? oldSet : newSet ).add( stageable );
+        untyped.remove( stageable );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends ExecutorService> T register( T executorService )
+    {
+        register( new ExecutorServiceStageable( executorService ) );
+        return executorService;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends Closeable> T register( T closeable )
+    {
+        register( new CloseableStageable( closeable ) );
+        return closeable;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stage()
+    {
+        stage( null );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stage( StageHandler stageHandler )
+    {
+        if ( stageHandler == null )
+        {
+            stageHandler = new NoOpStageHandler();
+        }
+
+        ExecutorService localExecutor = executor != null ? executor : Executors.newFixedThreadPool( parallelism );
+        try
+        {
+            // stageables may register new stageables while being staged
+            while ( !Thread.currentThread().isInterrupted() )
+            {
+                Map<Object, Set<Stageable>> typed = new HashMap<Object, Set<Stageable>>();
+                for ( TypeLiteral<?> type : reverseLookup.keySet() )
+                {
+                    typed.put( type, reverseLookup.remove( type ) );
+                }
+                Map<Object, Set<Stageable>> others = new HashMap<Object, Set<Stageable>>();
+                for ( Stageable stageable : untyped )
+                {
+                    others.put( stageable, Collections.singleton( stageable ) );
+                }
+                untyped.removeAll( others.keySet() );
+
+                if ( typed.isEmpty() && others.isEmpty() )
+                {
+                    break;
+                }
+
+                new Round( localExecutor, stageHandler, typed, dependencies( typed.keySet() ) ).run();
+                Map<Object, Set<Object>> noDependencies = Collections.emptyMap();
+                new Round( localExecutor, stageHandler, others, noDependencies ).run();
+            }
+        }
+        finally
+        {
+            if ( executor == null )
+            {
+                localExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Class<A> getStage()
+    {
+        return stage;
+    }
+
+    /**
+     * Computes, for each registered type, the registered types it depends on, either directly
+     * or through types that have not been registered.
+     *
+     * @param registered the registered types
+     * @return the dependencies of each registered type
+     */
+    private static Map<Object, Set<Object>> dependencies( Set<Object> registered )
+    {
+        Map<TypeLiteral<?>, List<TypeLiteral<?>>> directDependencies =
+            new HashMap<TypeLiteral<?>, List<TypeLiteral<?>>>();
+        Map<Object, Set<Object>> dependencies = new HashMap<Object, Set<Object>>();
+        for ( Object node : registered )
+        {
+            Set<Object> nodeDependencies = new LinkedHashSet<Object>();
+            Set<TypeLiteral<?>> visited = new HashSet<TypeLiteral<?>>();
+            List<TypeLiteral<?>> toVisit = new ArrayList<TypeLiteral<?>>();
+            toVisit.add( (TypeLiteral<?>) node );
+            while ( !toVisit.isEmpty() )
+            {
+                TypeLiteral<?> type = toVisit.remove( toVisit.size() - 1 );
+                for ( TypeLiteral<?> dependency : directDependencies( type, directDependencies ) )
+                {
+                    if ( !visited.add( dependency ) || dependency.equals( node ) )
+                    {
+                        continue;
+                    }
+                    if ( registered.contains( dependency ) )
+                    {
+                        nodeDependencies.add( dependency );
+                    }
+                    else
+                    {
+                        toVisit.add( dependency );
+                    }
+                }
+            }
+            dependencies.put( node, nodeDependencies );
+        }
+        return dependencies;
+    }
+
+    private static List<TypeLiteral<?>> directDependencies( TypeLiteral<?> type,
+                                                           Map<TypeLiteral<?>, List<TypeLiteral<?>>> cache )
+    {
+        List<TypeLiteral<?>> result = cache.get( type );
+        if ( result == null )
+        {
+            result = new ArrayList<TypeLiteral<?>>();
+            Set<InjectionPoint> injectionPoints = new LinkedHashSet<InjectionPoint>();
+            try
+            {
+                injectionPoints.add( InjectionPoint.forConstructorOf( type ) );
+            }
+            catch ( ConfigurationException e )
+            {
+                // ignore
+            }
+            try
+            {
+                injectionPoints.addAll( InjectionPoint.forInstanceMethodsAndFields( type ) );
+            }
+            catch ( ConfigurationException e )
+            {
+                // ignore
+            }
+            for ( InjectionPoint injectionPoint : injectionPoints )
+            {
+                for ( Dependency<?> dependency : injectionPoint.getDependencies() )
+                {
+                    result.add( dependency.getKey().getTypeLiteral() );
+                }
+            }
+            cache.put( type, result );
+        }
+        return result;
+    }
+
+    /**
+     * Stages a set of nodes, each node only after all the nodes depending on it.
+     */
+    private static final class Round
+    {
+
+        private final ExecutorService executor;
+
+        private final StageHandler stageHandler;
+
+        private final Map<Object, Set<Stageable>> nodes;
+
+        private final Map<Object, Set<Object>> dependencies;
+
+        private final BlockingQueue<Object> completed = new LinkedBlockingQueue<Object>();
+
+        private final Set<Object> submitted = new HashSet<Object>();
+
+        Round( ExecutorService executor, StageHandler stageHandler, Map<Object, Set<Stageable>> nodes,
+               Map<Object, Set<Object>> dependencies )
+        {
+            this.executor = executor;
+            this.stageHandler = stageHandler;
+            this.nodes = nodes;
+            this.dependencies = dependencies;
+        }
+
+        void run()
+        {
+            // number of dependents still to be staged for each node
+            Map<Object, Integer> pending = new HashMap<Object, Integer>();
+            for ( Object node : nodes.keySet() )
+            {
+                pending.put( node, 0 );
+            }
+            for ( Set<Object> nodeDependencies : dependencies.values() )
+            {
+                for ( Object dependency : nodeDependencies )
+                {
+                    pending.put( dependency, pending.get( dependency ) + 1 );
+                }
+            }
+
+            int inFlight = 0;
+            for ( Object node : nodes.keySet() )
+            {
+                if ( pending.get( node ) == 0 )
+                {
+                    submit( node );
+                    inFlight++;
+                }
+            }
+
+            int remaining = nodes.size();
+            while ( remaining > 0 )
+            {
+                if ( inFlight == 0 )
+                {
+                    // a dependency cycle: release the node with the fewest pending dependents
+                    submit( leastPending( pending ) );
+                    inFlight++;
+                }
+
+                Object done;
+                try
+                {
+                    done = completed.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                inFlight--;
+                remaining--;
+
+                Set<Object> nodeDependencies = dependencies.get( done );
+                if ( nodeDependencies != null )
+                {
+                    for ( Object dependency : nodeDependencies )
+                    {
+                        int count = pending.get( dependency ) - 1;
+                        pending.put( dependency, count );
+                        if ( count == 0 && !submitted.contains( dependency ) )
+                        {
+                            submit( dependency );
+                            inFlight++;
+                        }
+                    }
+                }
+            }
+        }
+
+        private Object leastPending( Map<Object, Integer> pending )
+        {
+            Object candidate = null;
+            for ( Map.Entry<Object, Integer> entry : pending.entrySet() )
+            {
+                if ( !submitted.contains( entry.getKey() )
+                    && ( candidate == null || entry.getValue() < pending.get( candidate ) ) )
+                {
+                    candidate = entry.getKey();
+                }
+            }
+            return candidate;
+        }
+
+        private void submit( final Object node )
+        {
+            submitted.add( node );
+            Set<Stageable> stageables = nodes.get( node );
+            final AtomicInteger running = new AtomicInteger( stageables.size() );
+            if ( stageables.isEmpty() )
+            {
+                completed.add( node );
+                return;
+            }
+            for ( final Stageable stageable : stageables )
+            {
+                executor.execute( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            stageable.stage( stageHandler );
+                        }
+                        catch ( Throwable e )
+                        {
+                            stageHandler.onError( AbstractBasicStageable.injecteeOf( stageable ), e );
+                        }
+                        finally
+                        {
+                            if ( running.decrementAndGet() == 0 )
+                            {
+                                completed.add( node );
+                            }
+                        }
+                    }
+                } );
+            }
+        }
+
+    }
+
+}
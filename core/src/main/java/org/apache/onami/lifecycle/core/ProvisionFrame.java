@@ -0,0 +1,154 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import com.google.inject.TypeLiteral;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the stageables registered while an object is provisioned into a {@link LifeCycleScope},
+ * so that the scope stages the scoped instance itself, while the stageables of the other instances
+ * created meanwhile, such as unscoped dependencies, are registered as usual.
+ */
+final class ProvisionFrame
+{
+
+    private static final ThreadLocal<ProvisionFrame> CURRENT = new ThreadLocal<ProvisionFrame>();
+
+    private final ProvisionFrame parent;
+
+    private final Class<?> stage;
+
+    private final List<Registration> registrations = new ArrayList<Registration>( 2 );
+
+    private ProvisionFrame( ProvisionFrame parent, Class<?> stage )
+    {
+        this.parent = parent;
+        this.stage = stage;
+    }
+
+    /**
+     * Registers the stageable in the stager, or in the provision frame of the current thread if any.
+     */
+    static <I> void register( Stager<?> stager, StageableTypeMapper typeMapper, Stageable stageable,
+                              TypeLiteral<I> type, Object injectee )
+    {
+        ProvisionFrame frame = CURRENT.get();
+        if ( frame == null )
+        {
+            stager.register( stageable );
+            typeMapper.registerType( stageable, type );
+        }
+        else
+        {
+            frame.registrations.add( new Registration( stager, typeMapper, stageable, type, injectee ) );
+        }
+    }
+
+    /**
+     * Starts collecting the registrations of the current thread.
+     *
+     * @param stage the stage handled by the scope
+     * @return the new frame
+     */
+    static ProvisionFrame push( Class<?> stage )
+    {
+        ProvisionFrame frame = new ProvisionFrame( CURRENT.get(), stage );
+        CURRENT.set( frame );
+        return frame;
+    }
+
+    /**
+     * Stops collecting registrations: the ones of the scoped instance for the scope stage are returned,
+     * the others go to the enclosing frame or to their stager.
+     *
+     * @param instance the scoped instance, null if its provisioning failed
+     * @return the stageables the scope has to stage
+     */
+    List<Stageable> pop( Object instance )
+    {
+        if ( parent == null )
+        {
+            CURRENT.remove();
+        }
+        else
+        {
+            CURRENT.set( parent );
+        }
+
+        List<Stageable> scoped = Collections.emptyList();
+        for ( Registration registration : registrations )
+        {
+            if ( instance != null && registration.injectee == instance && registration.stager.getStage() == stage )
+            {
+                if ( scoped.isEmpty() )
+                {
+                    scoped = new ArrayList<Stageable>( 2 );
+                }
+                scoped.add( registration.stageable );
+            }
+            else if ( parent != null )
+            {
+                parent.registrations.add( registration );
+            }
+            else
+            {
+                registration.register();
+            }
+        }
+        return scoped;
+    }
+
+    private static final class Registration
+    {
+
+        final Stager<?> stager;
+
+        final StageableTypeMapper typeMapper;
+
+        final Stageable stageable;
+
+        final TypeLiteral<?> type;
+
+        final Object injectee;
+
+        Registration( Stager<?> stager, StageableTypeMapper typeMapper, Stageable stageable, TypeLiteral<?> type,
+                      Object injectee )
+        {
+            this.stager = stager;
+            this.typeMapper = typeMapper;
+            this.stageable = stageable;
+            this.type = type;
+            this.injectee = injectee;
+        }
+
+        void register()
+        {
+            stager.register( stageable );
+            typeMapper.registerType( stageable, type );
+        }
+
+    }
+
+}
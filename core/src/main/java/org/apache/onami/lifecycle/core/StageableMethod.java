@@ -20,67 +20,101 @@ package org.apache.onami.lifecycle.core;
  */
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
+import java.util.concurrent.Future;
 
 /**
  * A {@link StageableMethod} is a reference to a stageable injectee
  * and related method to release resources.
+ * <p>
+ * When the method returns a {@code Future} or a {@code CompletionStage}, the outcome is the one of the
+ * operation it started: staged with an {@link AsyncStageHandler} the operation is awaited later, together
+ * with the other ones, otherwise it is awaited before returning.
  */
 final class StageableMethod
     extends AbstractBasicStageable<Object>
 {
 
     /**
-     * The method to be invoked to stage resources.
+     * The invoker of the method to be invoked to stage resources.
      */
-    private final Method stageMethod;
+    private final MethodInvoker stageMethod;
 
     /**
      * Creates a new {@link StageableMethod} reference.
      *
-     * @param stageMethod the method to be invoked to stage resources.
+     * @param stageMethod the invoker of the method to be invoked to stage resources.
      * @param injectee    the target injectee has to stage the resources.
      */
-    StageableMethod( Method stageMethod, Object injectee )
+    StageableMethod( MethodInvoker stageMethod, Object injectee )
     {
         super( injectee );
         this.stageMethod = stageMethod;
     }
 
+    /**
+     * @return the invoker of the method to be invoked to stage resources.
+     */
+    MethodInvoker getStageMethod()
+    {
+        return stageMethod;
+    }
+
+    /**
+     * @return the target injectee has to stage the resources.
+     */
+    Object getInjectee()
+    {
+        return object;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public final void stage( StageHandler stageHandler )
     {
+        long start = startTiming( stageHandler );
+        Future<?> future;
         try
         {
-            AccessController.doPrivileged( new PrivilegedAction<Void>()
-            {
-
-                @Override
-                public Void run()
-                {
-                    stageMethod.setAccessible( true );
-                    return null;
-                }
-
-            } );
-            stageMethod.invoke( object );
+            Object result = stageMethod.invoke( object );
+            future = stageMethod.isAsynchronous() ? MethodInvoker.toFuture( result ) : null;
         }
         catch ( InvocationTargetException e )
         {
+            finishTiming( stageHandler, start );
             stageHandler.onError( object, e.getCause() );
             return;
         }
         catch ( Throwable e )
         {
+            finishTiming( stageHandler, start );
             stageHandler.onError( object, e );
             return;
         }
+        if ( future != null )
+        {
+            if ( stageHandler instanceof AsyncStageHandler )
+            {
+                ( (AsyncStageHandler) stageHandler ).defer( this, future, start );
+            }
+            else
+            {
+                AsyncStageHandler.await( this, future, start, stageHandler );
+            }
+            return;
+        }
+        finishTiming( stageHandler, start );
         stageHandler.onSuccess( object );
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getOperation()
+    {
+        return stageMethod.getMethod().getName();
+    }
+
 }
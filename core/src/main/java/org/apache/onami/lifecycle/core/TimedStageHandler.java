@@ -0,0 +1,53 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+/**
+ * A {@link StageHandler} that is also notified when each injectee starts and finishes staging,
+ * together with the staging duration.
+ * <p>
+ * Stageables check whether the handler they are staged with is a {@code TimedStageHandler},
+ * so plain {@link StageHandler} implementations are not affected. {@link #onFinish(Object, String, long)}
+ * is invoked whatever the staging outcome, before {@link #onSuccess(Object)} or
+ * {@link #onError(Object, Throwable)}.
+ */
+public interface TimedStageHandler
+    extends StageHandler
+{
+
+    /**
+     * Tracks the input injectee is about to stage the resources.
+     *
+     * @param injectee  the injectee to be staged
+     * @param operation the staging operation, i.e. the stage method name
+     */
+    <I> void onStart( I injectee, String operation );
+
+    /**
+     * Tracks the input injectee finished staging the resources.
+     *
+     * @param injectee  the staged injectee
+     * @param operation the staging operation, i.e. the stage method name
+     * @param nanos     the staging duration, in nanoseconds
+     */
+    <I> void onFinish( I injectee, String operation, long nanos );
+
+}
@@ -0,0 +1,82 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A {@link StageableMethod} that doesn't prevent its injectee from being garbage collected:
+ * once the injectee is collected, the reference is enqueued and there is nothing left to stage.
+ */
+final class WeakStageableMethod
+    extends WeakReference<Object>
+    implements Stageable
+{
+
+    /**
+     * The invoker of the method to be invoked to stage resources.
+     */
+    private final MethodInvoker stageMethod;
+
+    /**
+     * @param stageable the stageable to reference weakly
+     * @param queue     the queue the reference is enqueued to once the injectee is collected
+     */
+    WeakStageableMethod( StageableMethod stageable, ReferenceQueue<Object> queue )
+    {
+        super( stageable.getInjectee(), queue );
+        this.stageMethod = stageable.getStageMethod();
+    }
+
+    /**
+     * @return a strong stageable for the injectee, null if it has been collected
+     */
+    StageableMethod resolve()
+    {
+        Object injectee = get();
+        return injectee != null ? new StageableMethod( stageMethod, injectee ) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stage( StageHandler stageHandler )
+    {
+        StageableMethod stageable = resolve();
+        if ( stageable != null )
+        {
+            stageable.stage( stageHandler );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        Object injectee = get();
+        return injectee != null ? injectee.toString() : "<collected> " + stageMethod;
+    }
+
+}
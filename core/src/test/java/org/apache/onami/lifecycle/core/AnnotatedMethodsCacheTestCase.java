@@ -0,0 +1,133 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.google.inject.Guice;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static com.google.inject.matcher.Matchers.any;
+import static java.util.Arrays.asList;
+
+public class AnnotatedMethodsCacheTestCase
+{
+
+    @Test
+    public void classesShouldBeScannedOnceForAllAnnotationsAndModules()
+    {
+        AnnotatedMethodsCache.clear();
+
+        Guice.createInjector( new TestLifeCycleModule(), new TestLifeCycleModule() )
+            .getInstance( MultiLifeCycleObject.class );
+        long misses = AnnotatedMethodsCache.getMissCount();
+        long hits = AnnotatedMethodsCache.getHitCount();
+
+        // MultiLifeCycleObject is scanned once, then served from the cache for
+        // the remaining 5 annotation lookups of the 2 modules
+        Assert.assertTrue( "hits: " + hits, hits >= 5 );
+
+        Guice.createInjector( new TestLifeCycleModule() ).getInstance( MultiLifeCycleObject.class );
+
+        Assert.assertEquals( misses, AnnotatedMethodsCache.getMissCount() );
+        Assert.assertTrue( AnnotatedMethodsCache.getHitCount() >= hits + 3 );
+    }
+
+    @Test
+    public void annotatedMethodsShouldBeIndexedByAnnotation()
+    {
+        AnnotatedMethodsCache.clear();
+
+        Assert.assertEquals( 3, AnnotatedMethodsCache.getDeclaredMethods( MultiLifeCycleObject.class,
+                                                                          TestAnnotationA.class ).size() );
+        Assert.assertEquals( 1, AnnotatedMethodsCache.getDeclaredMethods( MultiLifeCycleObject.class,
+                                                                          TestAnnotationC.class ).size() );
+        Assert.assertEquals( 0, AnnotatedMethodsCache.getDeclaredMethods( StageObject2.class,
+                                                                          TestAnnotationC.class ).size() );
+    }
+
+    @Test
+    public void staleIndexShouldNotHideAnnotatedMethods()
+    {
+        AnnotatedMethodsCache.clear();
+
+        List<Method> methods = AnnotatedMethodsCache.getDeclaredMethods( IndexedObject.class, TestAnnotationA.class );
+
+        Assert.assertEquals( 2, methods.size() );
+        methods = AnnotatedMethodsCache.getDeclaredMethods( StaleIndexedObject.class, TestAnnotationA.class );
+        Assert.assertEquals( 1, methods.size() );
+        Assert.assertEquals( "renamed", methods.get( 0 ).getName() );
+    }
+
+    @Test
+    public void indexedClassesShouldBePreloaded()
+    {
+        AnnotatedMethodsCache.clear();
+
+        int submitted = AnnotatedMethodsCache.preload( getClass().getClassLoader(), new Executor()
+        {
+            @Override
+            public void execute( Runnable command )
+            {
+                command.run();
+            }
+        } );
+
+        Assert.assertEquals( 2, submitted );
+        Assert.assertEquals( 2, AnnotatedMethodsCache.getIndexedCount() );
+        long misses = AnnotatedMethodsCache.getMissCount();
+        Assert.assertEquals( 2, AnnotatedMethodsCache.getDeclaredMethods( IndexedObject.class,
+                                                                          TestAnnotationA.class ).size() );
+        Assert.assertEquals( misses, AnnotatedMethodsCache.getMissCount() );
+    }
+
+    @Test
+    public void modulesShouldPreloadIndexedClassesWhenEnabled()
+    {
+        AnnotatedMethodsCache.clear();
+
+        TestLifeCycleModule module = new TestLifeCycleModule();
+        module.setIndexPreloading( new Executor()
+        {
+            @Override
+            public void execute( Runnable command )
+            {
+                command.run();
+            }
+        } );
+        Guice.createInjector( module );
+
+        Assert.assertEquals( 2, AnnotatedMethodsCache.getIndexedCount() );
+    }
+
+    private static class TestLifeCycleModule
+        extends LifeCycleModule
+    {
+
+        @Override
+        protected void configure()
+        {
+            bindLifeCycle( asList( TestAnnotationA.class, TestAnnotationB.class, TestAnnotationC.class ), any() );
+        }
+    }
+
+}
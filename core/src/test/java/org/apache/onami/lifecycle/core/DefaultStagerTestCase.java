@@ -1,5 +1,19 @@
 package org.apache.onami.lifecycle.core;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Assert;
@@ -102,4 +116,506 @@ public class DefaultStagerTestCase
 
         Assert.assertTrue( staged.get() );
     }
+
+    @Test
+    public void stagerShouldInterruptStageablesOverrunningTheirBudget()
+        throws Exception
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        stager.setStageableTimeout( 50, TimeUnit.MILLISECONDS );
+        final CountDownLatch interrupted = new CountDownLatch( 1 );
+        final AtomicBoolean staged = new AtomicBoolean();
+        stager.register( new BlockingStageable( interrupted ) );
+        stager.register( new Stageable()
+        {
+            @Override
+            public void stage( StageHandler stageHandler )
+            {
+                staged.set( true );
+            }
+        } );
+
+        RecordingStageHandler stageHandler = new RecordingStageHandler();
+        stager.stage( stageHandler );
+
+        Assert.assertTrue( staged.get() );
+        Assert.assertTrue( interrupted.await( 1, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 1, stageHandler.errors.size() );
+        Assert.assertTrue( stageHandler.errors.get( 0 ) instanceof TimeoutException );
+    }
+
+    @Test
+    public void stagerShouldReportStageablesLeftOnceStageTimedOut()
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        stager.setStageTimeout( 100, TimeUnit.MILLISECONDS );
+        final AtomicBoolean staged = new AtomicBoolean();
+        stager.register( new BlockingStageable( new CountDownLatch( 1 ) ) );
+        stager.register( new Stageable()
+        {
+            @Override
+            public void stage( StageHandler stageHandler )
+            {
+                staged.set( true );
+            }
+        } );
+
+        RecordingStageHandler stageHandler = new RecordingStageHandler();
+        long start = System.nanoTime();
+        stager.stage( stageHandler );
+
+        Assert.assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) < 1000 );
+        Assert.assertFalse( staged.get() );
+        Assert.assertEquals( 2, stageHandler.errors.size() );
+        Assert.assertTrue( stageHandler.errors.get( 0 ) instanceof TimeoutException );
+        Assert.assertTrue( stageHandler.errors.get( 1 ) instanceof TimeoutException );
+    }
+
+    @Test
+    public void stagerShouldShutDownExecutorsLeftOnceStageTimedOut()
+        throws Exception
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        stager.setStageTimeout( 100, TimeUnit.MILLISECONDS );
+        stager.register( new BlockingStageable( new CountDownLatch( 1 ) ) );
+        final CountDownLatch never = new CountDownLatch( 1 );
+        ExecutorService executor = stager.register( Executors.newSingleThreadExecutor() );
+        executor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    never.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    // forcibly shut down
+                }
+            }
+        } );
+
+        RecordingStageHandler stageHandler = new RecordingStageHandler();
+        stager.stage( stageHandler );
+
+        Assert.assertTrue( executor.awaitTermination( 5, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 2, stageHandler.errors.size() );
+        Assert.assertTrue( stageHandler.errors.get( 1 ) instanceof ExecutorTerminationTimeoutException );
+    }
+
+    @Test
+    public void stagerShouldApplyPerTypeBudgets()
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        stager.setStageableTimeout( SlowCloseable.class, 50, TimeUnit.MILLISECONDS );
+        SlowCloseable slow = stager.register( new SlowCloseable() );
+        Closeable fast = stager.register( new Closeable()
+        {
+            @Override
+            public void close()
+            {
+                // nothing to do
+            }
+        } );
+
+        RecordingStageHandler stageHandler = new RecordingStageHandler();
+        stager.stage( stageHandler );
+
+        Assert.assertEquals( Collections.<Object>singletonList( slow ), stageHandler.failed );
+        Assert.assertEquals( Collections.<Object>singletonList( fast ), stageHandler.succeeded );
+    }
+
+    @Test
+    public void stagerShouldDrainExecutorsAgainstASharedDeadline()
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        stager.setBatchedExecutorDraining( true );
+        stager.setExecutorTerminationTimeout( 1, TimeUnit.SECONDS );
+        final CountDownLatch never = new CountDownLatch( 1 );
+        Runnable blocking = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    never.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    // forcibly shut down
+                }
+            }
+        };
+        int blocked = 6;
+        for ( int i = 0; i < blocked; i++ )
+        {
+            ExecutorService executor = stager.register( Executors.newSingleThreadExecutor() );
+            executor.execute( blocking );
+            executor.execute( blocking );
+        }
+        ExecutorService idle = stager.register( Executors.newSingleThreadExecutor() );
+
+        RecordingStageHandler stageHandler = new RecordingStageHandler();
+        long start = System.nanoTime();
+        stager.stage( stageHandler );
+
+        // draining them one after the other would take 6 seconds
+        Assert.assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) < 5000 );
+        Assert.assertEquals( Collections.<Object>singletonList( idle ), stageHandler.succeeded );
+        Assert.assertEquals( blocked, stageHandler.errors.size() );
+        for ( Throwable error : stageHandler.errors )
+        {
+            Assert.assertEquals( 1, ( (ExecutorTerminationTimeoutException) error ).getDroppedTasks() );
+        }
+    }
+
+    @Test
+    public void stagerShouldDropCollectedInjecteesWhenReferencingThemWeakly()
+        throws Exception
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        stager.setWeakReferences( true );
+        MethodInvoker invoker = new MethodInvoker( StagedObject.class.getMethod( "stage" ) );
+        StagedObject retained = new StagedObject();
+        stager.register( new StageableMethod( invoker, retained ) );
+        for ( int i = 0; i < 10000; i++ )
+        {
+            stager.register( new StageableMethod( invoker, new StagedObject() ) );
+        }
+
+        for ( int i = 0; i < 50 && stager.getCollectedCount() == 0 && stager.getLiveCount() > 1; i++ )
+        {
+            System.gc();
+            Thread.sleep( 20 );
+            // trigger the sweep
+            stager.register( new StageableMethod( invoker, new StagedObject() ) );
+        }
+        Assert.assertTrue( stager.getLiveCount() < 10000 );
+
+        stager.stage();
+
+        Assert.assertEquals( 1, retained.staged );
+        Assert.assertEquals( 0, stager.getLiveCount() );
+    }
+
+    public static final class StagedObject
+    {
+
+        int staged;
+
+        public void stage()
+        {
+            staged++;
+        }
+
+    }
+
+    @Test
+    public void stagerShouldPreserveOrderOfConcurrentRegistrations()
+        throws Exception
+    {
+        assertConcurrentRegistrationsOrder( DefaultStager.Order.FIRST_IN_FIRST_OUT );
+        assertConcurrentRegistrationsOrder( DefaultStager.Order.FIRST_IN_LAST_OUT );
+    }
+
+    private static void assertConcurrentRegistrationsOrder( DefaultStager.Order order )
+        throws InterruptedException
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class, order );
+        final int threads = 8;
+        final int registrations = 1000;
+        final List<int[]> staged = Collections.synchronizedList( new ArrayList<int[]>() );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        List<Thread> registering = new ArrayList<Thread>();
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int thread = t;
+            registering.add( new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    for ( int i = 0; i < registrations; i++ )
+                    {
+                        final int[] registration = { thread, i };
+                        stager.register( new Stageable()
+                        {
+                            @Override
+                            public void stage( StageHandler stageHandler )
+                            {
+                                staged.add( registration );
+                            }
+                        } );
+                    }
+                }
+            } ) );
+        }
+        for ( Thread thread : registering )
+        {
+            thread.start();
+        }
+        start.countDown();
+        for ( Thread thread : registering )
+        {
+            thread.join();
+        }
+
+        stager.stage();
+
+        Assert.assertEquals( threads * registrations, staged.size() );
+        int[] last = new int[threads];
+        Arrays.fill( last, order == DefaultStager.Order.FIRST_IN_FIRST_OUT ? -1 : registrations );
+        for ( int[] registration : staged )
+        {
+            if ( order == DefaultStager.Order.FIRST_IN_FIRST_OUT )
+            {
+                Assert.assertTrue( registration[1] > last[registration[0]] );
+            }
+            else
+            {
+                Assert.assertTrue( registration[1] < last[registration[0]] );
+            }
+            last[registration[0]] = registration[1];
+        }
+    }
+
+    @Test
+    public void stagerShouldAwaitAsynchronousStageMethodsTogether()
+        throws Exception
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        int size = 4;
+        ExecutorService executor = Executors.newFixedThreadPool( size );
+        try
+        {
+            // each operation completes only once all of them started
+            CountDownLatch started = new CountDownLatch( size );
+            MethodInvoker invoker = new MethodInvoker( AsyncObject.class.getMethod( "stage" ) );
+            List<AsyncObject> objects = new ArrayList<AsyncObject>();
+            for ( int i = 0; i < size; i++ )
+            {
+                AsyncObject object = new AsyncObject( executor, started, i == 0 );
+                objects.add( object );
+                stager.register( new StageableMethod( invoker, object ) );
+            }
+
+            RecordingStageHandler handler = new RecordingStageHandler();
+            stager.stage( handler );
+
+            Assert.assertEquals( 0, started.getCount() );
+            Assert.assertEquals( objects.subList( 1, size ), handler.succeeded );
+            Assert.assertEquals( Arrays.asList( objects.get( 0 ) ), handler.failed );
+            Assert.assertEquals( "failed", handler.errors.get( 0 ).getMessage() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stagerShouldAwaitAsynchronousStageMethodsTogetherWithinTimeouts()
+        throws Exception
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        stager.setStageTimeout( 30, TimeUnit.SECONDS );
+        stager.setStageableTimeout( 20, TimeUnit.SECONDS );
+        int size = 4;
+        ExecutorService executor = Executors.newFixedThreadPool( size );
+        try
+        {
+            // each operation completes only once all of them started
+            CountDownLatch started = new CountDownLatch( size );
+            MethodInvoker invoker = new MethodInvoker( AsyncObject.class.getMethod( "stage" ) );
+            List<AsyncObject> objects = new ArrayList<AsyncObject>();
+            for ( int i = 0; i < size; i++ )
+            {
+                AsyncObject object = new AsyncObject( executor, started, false );
+                objects.add( object );
+                stager.register( new StageableMethod( invoker, object ) );
+            }
+
+            RecordingStageHandler handler = new RecordingStageHandler();
+            stager.stage( handler );
+
+            Assert.assertEquals( 0, started.getCount() );
+            Assert.assertEquals( objects, handler.succeeded );
+            Assert.assertTrue( handler.errors.isEmpty() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stagerShouldCancelAsynchronousStageMethodsOnceStageTimedOut()
+        throws Exception
+    {
+        final DefaultStager<TestAnnotationA> stager =
+                new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        stager.setStageTimeout( 100, TimeUnit.MILLISECONDS );
+        PendingObject object = new PendingObject();
+        stager.register( new StageableMethod( new MethodInvoker( PendingObject.class.getMethod( "stage" ) ), object ) );
+
+        RecordingStageHandler handler = new RecordingStageHandler();
+        long start = System.nanoTime();
+        stager.stage( handler );
+
+        Assert.assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) < 5000 );
+        Assert.assertEquals( Arrays.asList( object ), handler.failed );
+        Assert.assertTrue( handler.errors.get( 0 ) instanceof TimeoutException );
+        Assert.assertTrue( object.future.isCancelled() );
+    }
+
+    public static final class AsyncObject
+    {
+
+        private final ExecutorService executor;
+
+        private final CountDownLatch started;
+
+        private final boolean failing;
+
+        AsyncObject( ExecutorService executor, CountDownLatch started, boolean failing )
+        {
+            this.executor = executor;
+            this.started = started;
+            this.failing = failing;
+        }
+
+        public Future<Void> stage()
+        {
+            return executor.submit( new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                    throws Exception
+                {
+                    started.countDown();
+                    if ( !started.await( 5, TimeUnit.SECONDS ) )
+                    {
+                        throw new TimeoutException( "operations did not overlap" );
+                    }
+                    if ( failing )
+                    {
+                        throw new IOException( "failed" );
+                    }
+                    return null;
+                }
+            } );
+        }
+
+    }
+
+    public static final class PendingObject
+    {
+
+        final FutureTask<Void> future = new FutureTask<Void>( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // never run
+            }
+        }, null );
+
+        public Future<Void> stage()
+        {
+            return future;
+        }
+
+    }
+
+    private static final class BlockingStageable
+        implements Stageable
+    {
+
+        private final CountDownLatch interrupted;
+
+        BlockingStageable( CountDownLatch interrupted )
+        {
+            this.interrupted = interrupted;
+        }
+
+        @Override
+        public void stage( StageHandler stageHandler )
+        {
+            try
+            {
+                Thread.sleep( TimeUnit.MINUTES.toMillis( 1 ) );
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted.countDown();
+            }
+            stageHandler.onSuccess( this );
+        }
+
+    }
+
+    private static final class SlowCloseable
+        implements Closeable
+    {
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try
+            {
+                Thread.sleep( TimeUnit.MINUTES.toMillis( 1 ) );
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IOException( "interrupted" );
+            }
+        }
+
+    }
+
+    private static final class RecordingStageHandler
+        implements StageHandler
+    {
+
+        final List<Object> succeeded = Collections.synchronizedList( new ArrayList<Object>() );
+
+        final List<Object> failed = Collections.synchronizedList( new ArrayList<Object>() );
+
+        final List<Throwable> errors = Collections.synchronizedList( new ArrayList<Throwable>() );
+
+        @Override
+        public <I> void onSuccess( I injectee )
+        {
+            succeeded.add( injectee );
+        }
+
+        @Override
+        public <I, E extends Throwable> void onError( I injectee, E error )
+        {
+            failed.add( injectee );
+            errors.add( error );
+        }
+
+    }
+
 }
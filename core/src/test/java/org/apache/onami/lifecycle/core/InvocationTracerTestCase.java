@@ -0,0 +1,108 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import com.google.inject.Guice;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public final class InvocationTracerTestCase
+{
+
+    @Test
+    public void tracerIsNotifiedAroundEveryInvocation()
+    {
+        final List<String> events = new ArrayList<String>();
+        LifeCycleModule module = new LifeCycleModule()
+        {
+
+            @Override
+            protected void configure()
+            {
+                bindLifeCycle( TestAnnotationA.class );
+            }
+
+        };
+        module.setInvocationTracer( new InvocationTracer()
+        {
+
+            @Override
+            public <I> void beforeInvocation( I injectee, Method method )
+            {
+                events.add( "before " + method.getName() );
+            }
+
+            @Override
+            public <I> void afterInvocation( I injectee, Method method )
+            {
+                events.add( "after " + method.getName() );
+            }
+
+        } );
+
+        Guice.createInjector( module ).getInstance( Traced.class );
+
+        assertEquals( asList( "before init", "after init" ), events );
+    }
+
+    @Test
+    public void disabledLoggingTracerDoesNotFormatInjectee()
+    {
+        Logger logger = Logger.getLogger( InvocationTracerTestCase.class.getName() );
+        logger.setLevel( Level.INFO );
+        LoggingInvocationTracer tracer = new LoggingInvocationTracer( logger, Level.FINE );
+
+        Traced traced = new Traced();
+        tracer.beforeInvocation( traced, null );
+        tracer.afterInvocation( traced, null );
+
+        assertEquals( 0, traced.formatted );
+    }
+
+    public static class Traced
+    {
+
+        int formatted;
+
+        @TestAnnotationA
+        public void init()
+        {
+            // nothing to do
+        }
+
+        @Override
+        public String toString()
+        {
+            formatted++;
+            return "traced";
+        }
+
+    }
+
+}
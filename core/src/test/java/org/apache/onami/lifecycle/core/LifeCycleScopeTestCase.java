@@ -0,0 +1,174 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.ProvisionException;
+import com.google.inject.ScopeAnnotation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+public class LifeCycleScopeTestCase
+{
+
+    @Retention( RUNTIME )
+    @Target( TYPE )
+    @ScopeAnnotation
+    public @interface TestScoped
+    {
+
+    }
+
+    @TestScoped
+    public static class ScopedObject1
+    {
+        @Inject
+        StringBuilder str;
+
+        @Inject
+        UnscopedObject dependency;
+
+        @TestAnnotationA
+        public void dispose()
+        {
+            str.append( "1" );
+        }
+    }
+
+    @TestScoped
+    public static class ScopedObject2
+    {
+        @Inject
+        StringBuilder str;
+
+        @Inject
+        ScopedObject1 object1;
+
+        @TestAnnotationA
+        public void dispose()
+        {
+            str.append( "2" );
+        }
+    }
+
+    public static class UnscopedObject
+    {
+        @Inject
+        StringBuilder str;
+
+        @TestAnnotationA
+        public void dispose()
+        {
+            str.append( "u" );
+        }
+    }
+
+    private final StringBuilder str = new StringBuilder();
+
+    private final LifeCycleScope<TestAnnotationA> scope = new LifeCycleScope<TestAnnotationA>( TestAnnotationA.class );
+
+    private Injector createInjector()
+    {
+        Module module = new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                binder().bind( StringBuilder.class ).toInstance( str );
+            }
+        };
+        return Guice.createInjector( module, new LifeCycleStageModule()
+        {
+            @Override
+            protected void configureBindings()
+            {
+                bindStager( new DefaultStager<TestAnnotationA>( TestAnnotationA.class ) );
+                bindScope( TestScoped.class, scope );
+            }
+        } );
+    }
+
+    @Test
+    public void scopeShouldStageItsObjectsInReverseOrderOnExit()
+    {
+        Injector injector = createInjector();
+
+        scope.enter();
+        ScopedObject2 object2 = injector.getInstance( ScopedObject2.class );
+        Assert.assertSame( object2, injector.getInstance( ScopedObject2.class ) );
+        Assert.assertSame( object2.object1, injector.getInstance( ScopedObject1.class ) );
+        scope.exit();
+        Assert.assertEquals( "21", str.toString() );
+
+        // the unscoped dependency is left to the module stager
+        injector.getInstance( LifeCycleStageModule.key( TestAnnotationA.class ) ).stage();
+        Assert.assertEquals( "21u", str.toString() );
+    }
+
+    @Test
+    public void scopeInstancesShouldBeStagedIndependently()
+    {
+        Injector injector = createInjector();
+
+        scope.enter();
+        ScopedObject1 first = injector.getInstance( ScopedObject1.class );
+        scope.exit();
+
+        scope.enter();
+        Assert.assertNotSame( first, injector.getInstance( ScopedObject1.class ) );
+        scope.exit();
+
+        Assert.assertEquals( "11", str.toString() );
+        scope.enter();
+        scope.exit();
+        Assert.assertEquals( "11", str.toString() );
+    }
+
+    @Test
+    public void unscopedObjectsShouldBeStagedByTheModuleStager()
+    {
+        Injector injector = createInjector();
+
+        scope.enter();
+        injector.getInstance( UnscopedObject.class );
+        scope.exit();
+        Assert.assertEquals( "", str.toString() );
+
+        injector.getInstance( LifeCycleStageModule.key( TestAnnotationA.class ) ).stage();
+        Assert.assertEquals( "u", str.toString() );
+    }
+
+    @Test( expected = ProvisionException.class )
+    public void scopedObjectsShouldNotBeProvidedOutOfScope()
+    {
+        createInjector().getInstance( ScopedObject1.class );
+    }
+
+}
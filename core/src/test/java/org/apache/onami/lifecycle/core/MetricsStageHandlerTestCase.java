@@ -0,0 +1,126 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class MetricsStageHandlerTestCase
+{
+
+    @Test
+    public void recordsPerTypeAndPerMethodTimings()
+    {
+        final DefaultStager<TestAnnotationA> stager = new DefaultStager<TestAnnotationA>( TestAnnotationA.class );
+        Injector injector = Guice.createInjector( new LifeCycleStageModule()
+        {
+
+            @Override
+            protected void configureBindings()
+            {
+                bindStager( stager );
+            }
+
+        }, new AbstractModule()
+        {
+
+            @Override
+            protected void configure()
+            {
+                bind( StringBuilder.class ).toInstance( new StringBuilder() );
+            }
+
+        } );
+        injector.getInstance( StageObject1.class );
+        injector.getInstance( StageObject1.class );
+        injector.getInstance( StageObject2.class );
+        Closeable failing = stager.register( new Closeable()
+        {
+
+            @Override
+            public void close()
+                throws IOException
+            {
+                throw new IOException( "expected" );
+            }
+
+        } );
+
+        final AtomicInteger successes = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        MetricsStageHandler handler = new MetricsStageHandler( new StageHandler()
+        {
+
+            @Override
+            public <I> void onSuccess( I injectee )
+            {
+                successes.incrementAndGet();
+            }
+
+            @Override
+            public <I, E extends Throwable> void onError( I injectee, E error )
+            {
+                errors.incrementAndGet();
+            }
+
+        }, 2 );
+        stager.stage( handler );
+
+        assertEquals( 3, successes.get() );
+        assertEquals( 1, errors.get() );
+
+        MetricsStageHandler.Snapshot snapshot = handler.snapshot();
+        assertEquals( 2, snapshot.getTypes().get( StageObject1.class.getName() ).getCount() );
+        assertEquals( 1, snapshot.getTypes().get( StageObject2.class.getName() ).getCount() );
+        assertEquals( 2, snapshot.getMethods().get( StageObject1.class.getName() + "#stageA" ).getCount() );
+        assertEquals( 1, snapshot.getMethods().get( StageObject2.class.getName() + "#stageA" ).getCount() );
+        assertEquals( 3, snapshot.getMethods().size() );
+        assertEquals( 1, snapshot.getMethods().get( failing.getClass().getName() + "#close" ).getCount() );
+
+        MetricsStageHandler.Timing timing = snapshot.getTypes().get( StageObject1.class.getName() );
+        long bucketed = 0;
+        for ( long bucket : timing.getBuckets() )
+        {
+            bucketed += bucket;
+        }
+        assertEquals( 2, bucketed );
+        assertTrue( timing.getMinNanos() <= timing.getMaxNanos() );
+        assertTrue( timing.getQuantileNanos( 1 ) <= timing.getMaxNanos() );
+
+        List<MetricsStageHandler.Sample> slowest = snapshot.getSlowest();
+        assertEquals( 2, slowest.size() );
+        assertTrue( slowest.get( 0 ).getNanos() >= slowest.get( 1 ).getNanos() );
+
+        handler.reset();
+        assertTrue( handler.snapshot().getTypes().isEmpty() );
+    }
+
+}
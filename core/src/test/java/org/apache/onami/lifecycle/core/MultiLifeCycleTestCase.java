@@ -34,6 +34,8 @@ import org.junit.Test;
 
 import java.lang.annotation.Annotation;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class MultiLifeCycleTestCase
 {
@@ -122,6 +124,42 @@ public class MultiLifeCycleTestCase
         Assert.assertEquals( "2b1b", str.toString() );
     }
 
+    @Test
+    public void testAsynchronousMethodsAreAwaited()
+    {
+        Module lifeCycleModule = new TestLifeCycleModule( asList( TestAnnotationA.class ) );
+        AsyncLifeCycleObject obj = Guice.createInjector( lifeCycleModule ).getInstance( AsyncLifeCycleObject.class );
+        Assert.assertTrue( obj.initialized );
+    }
+
+    public static class AsyncLifeCycleObject
+    {
+        volatile boolean initialized;
+
+        @TestAnnotationA
+        public Future<?> init()
+        {
+            FutureTask<Void> task = new FutureTask<Void>( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep( 50 );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    initialized = true;
+                }
+            }, null );
+            new Thread( task ).start();
+            return task;
+        }
+    }
+
     private static class TestLifeCycleModule extends LifeCycleModule
     {
 
@@ -0,0 +1,195 @@
+package org.apache.onami.lifecycle.core;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ParallelStagerTestCase
+{
+
+    private static final List<String> STAGED = Collections.synchronizedList( new ArrayList<String>() );
+
+    @Test
+    public void dependentsShouldBeStagedBeforeTheirDependencies()
+    {
+        STAGED.clear();
+        ParallelStager<TestAnnotationA> stager = new ParallelStager<TestAnnotationA>( TestAnnotationA.class, 4 );
+        Injector injector = Guice.createInjector( new TestLifeCycleStageModule( stager ) );
+        injector.getInstance( Top.class );
+
+        stager.stage();
+
+        Assert.assertEquals( 4, STAGED.size() );
+        Assert.assertTrue( STAGED.indexOf( "top" ) < STAGED.indexOf( "left" ) );
+        Assert.assertTrue( STAGED.indexOf( "top" ) < STAGED.indexOf( "right" ) );
+        Assert.assertTrue( STAGED.indexOf( "left" ) < STAGED.indexOf( "bottom" ) );
+        Assert.assertTrue( STAGED.indexOf( "right" ) < STAGED.indexOf( "bottom" ) );
+    }
+
+    @Test
+    public void independentStageablesShouldBeStagedConcurrently()
+        throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch( 2 );
+        final List<Boolean> results = Collections.synchronizedList( new ArrayList<Boolean>() );
+        ParallelStager<TestAnnotationA> stager = new ParallelStager<TestAnnotationA>( TestAnnotationA.class, 2 );
+        for ( int i = 0; i < 2; i++ )
+        {
+            stager.register( new Stageable()
+            {
+                @Override
+                public void stage( StageHandler stageHandler )
+                {
+                    latch.countDown();
+                    try
+                    {
+                        // both stageables must be running at the same time to get here
+                        results.add( latch.await( 5, TimeUnit.SECONDS ) );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } );
+        }
+
+        stager.stage();
+
+        Assert.assertEquals( Arrays.asList( true, true ), results );
+    }
+
+    @Test
+    public void failuresShouldBeReportedForTheInjectee()
+    {
+        final List<Object> failed = Collections.synchronizedList( new ArrayList<Object>() );
+        ParallelStager<TestAnnotationA> stager = new ParallelStager<TestAnnotationA>( TestAnnotationA.class, 2 );
+        stager.register( new AbstractBasicStageable<String>( "injectee" )
+        {
+            @Override
+            public void stage( StageHandler stageHandler )
+            {
+                throw new IllegalStateException( "failed" );
+            }
+        } );
+
+        stager.stage( new StageHandler()
+        {
+            @Override
+            public <I, E extends Throwable> void onError( I injectee, E error )
+            {
+                failed.add( injectee );
+            }
+
+            @Override
+            public <I> void onSuccess( I injectee )
+            {
+                // nothing to do
+            }
+        } );
+
+        Assert.assertEquals( Arrays.<Object>asList( "injectee" ), failed );
+    }
+
+    @Singleton
+    public static class Bottom
+    {
+        @TestAnnotationA
+        public void stage()
+        {
+            STAGED.add( "bottom" );
+        }
+    }
+
+    @Singleton
+    public static class Left
+    {
+        @Inject
+        public Left( Bottom bottom )
+        {
+        }
+
+        @TestAnnotationA
+        public void stage()
+        {
+            STAGED.add( "left" );
+        }
+    }
+
+    @Singleton
+    public static class Right
+    {
+        @Inject
+        public Right( Bottom bottom )
+        {
+        }
+
+        @TestAnnotationA
+        public void stage()
+        {
+            STAGED.add( "right" );
+        }
+    }
+
+    @Singleton
+    public static class Top
+    {
+        @Inject
+        public Top( Left left, Right right )
+        {
+        }
+
+        @TestAnnotationA
+        public void stage()
+        {
+            STAGED.add( "top" );
+        }
+    }
+
+    private static class TestLifeCycleStageModule
+        extends LifeCycleStageModule
+    {
+
+        private final ParallelStager<?> stager;
+
+        public TestLifeCycleStageModule( ParallelStager<?> stager )
+        {
+            this.stager = stager;
+        }
+
+        @Override
+        protected void configureBindings()
+        {
+            bindStager( stager ).mappingWith( stager );
+        }
+    }
+
+}
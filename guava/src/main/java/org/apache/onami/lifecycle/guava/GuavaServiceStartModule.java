@@ -19,12 +19,21 @@ package org.apache.onami.lifecycle.guava;
  * under the License.
  */
 
+import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.spi.InjectionListener;
+import com.google.inject.spi.TypeEncounter;
+import com.google.inject.spi.TypeListener;
 import org.apache.onami.lifecycle.core.LifeCycleModule;
 
 import com.google.common.util.concurrent.Service;
 
 /**
  * Guice module to register methods to be invoked after injection is complete.
+ * <p>
+ * By default each service is started while it is provisioned. When created with a {@link ServiceStartGate},
+ * provisioned services are handed to the gate instead, which starts them concurrently and tells when all
+ * of them are running; the gate is bound in the injector.
  *
  * @author Eric Yung
  */
@@ -32,9 +41,50 @@ public class GuavaServiceStartModule
     extends LifeCycleModule
 {
 
+    private final ServiceStartGate gate;
+
+    public GuavaServiceStartModule()
+    {
+        this( null );
+    }
+
+    /**
+     * @param gate the gate the provisioned services are registered in, null to start them while provisioned
+     * @since 0.2.0
+     */
+    public GuavaServiceStartModule( ServiceStartGate gate )
+    {
+        this.gate = gate;
+    }
+
     @Override
     protected void configure()
     {
+        if ( gate != null )
+        {
+            bind( ServiceStartGate.class ).toInstance( gate );
+            bindListener( new AbstractMatcher<TypeLiteral<?>>()
+            {
+                public boolean matches( TypeLiteral<?> tl )
+                {
+                    return Service.class.isAssignableFrom( tl.getRawType() );
+                }
+            }, new TypeListener()
+            {
+                public <I> void hear( TypeLiteral<I> type, TypeEncounter<I> encounter )
+                {
+                    encounter.register( new InjectionListener<I>()
+                    {
+                        public void afterInjection( I injectee )
+                        {
+                            gate.register( (Service) injectee );
+                        }
+                    } );
+                }
+            } );
+            return;
+        }
+
         bindLifeCycle( Service.class, "startAsync", new InvocationResultHandler() {
             public void afterInvocation(Object  obj)
                 throws Throwable
@@ -49,4 +99,13 @@ public class GuavaServiceStartModule
         });
     }
 
+    /**
+     * @return the gate the provisioned services are registered in, null if they are started while provisioned
+     * @since 0.2.0
+     */
+    public ServiceStartGate getGate()
+    {
+        return gate;
+    }
+
 }
@@ -21,7 +21,9 @@ package org.apache.onami.lifecycle.guava;
 
 import com.google.inject.TypeLiteral;
 import com.google.inject.matcher.AbstractMatcher;
-import org.apache.onami.lifecycle.core.DefaultStager;
+import com.google.inject.spi.InjectionListener;
+import com.google.inject.spi.TypeEncounter;
+import com.google.inject.spi.TypeListener;
 import org.apache.onami.lifecycle.core.DisposingStager;
 import org.apache.onami.lifecycle.core.LifeCycleStageModule;
 
@@ -30,6 +32,8 @@ import com.google.common.util.concurrent.Service;
 /**
  * Guice module to register methods to be invoked when {@link org.apache.onami.lifecycle.core.Stager#stage()} is invoked.
  * Module instance have state so it must not be used to construct more than one {@link com.google.inject.Injector}.
+ * <p>
+ * Provisioned services are stopped by a {@link GuavaServiceStopStager}, which waits for them to be terminated.
  *
  * @author Eric Yung
  */
@@ -37,19 +41,45 @@ public class GuavaServiceStopModule
     extends LifeCycleStageModule
 {
 
-    private final DisposingStager<Service> stager = new DefaultStager<Service>(
-        Service.class, DefaultStager.Order.FIRST_IN_LAST_OUT );
+    private final GuavaServiceStopStager stager;
+
+    public GuavaServiceStopModule()
+    {
+        this( new GuavaServiceStopStager() );
+    }
+
+    /**
+     * @param stager the configured stager stopping the services
+     * @since 0.2.0
+     */
+    public GuavaServiceStopModule( GuavaServiceStopStager stager )
+    {
+        this.stager = stager;
+    }
 
     @Override
     protected void configureBindings()
     {
-        bindStager( stager, new AbstractMatcher<TypeLiteral>()
+        bind( key( Service.class ) ).toInstance( stager );
+        bindListener( new AbstractMatcher<TypeLiteral<?>>()
         {
-            public boolean matches( TypeLiteral  tl )
+            public boolean matches( TypeLiteral<?> tl )
             {
                 return stager.getStage().isAssignableFrom( tl.getRawType() );
             }
-        }, null, "stopAsync" );
+        }, new TypeListener()
+        {
+            public <I> void hear( final TypeLiteral<I> type, TypeEncounter<I> encounter )
+            {
+                encounter.register( new InjectionListener<I>()
+                {
+                    public void afterInjection( I injectee )
+                    {
+                        stager.register( (Service) injectee, type );
+                    }
+                } );
+            }
+        } );
 
         bind( new TypeLiteral<DisposingStager<Service>>() {} ).toInstance( stager );
     }
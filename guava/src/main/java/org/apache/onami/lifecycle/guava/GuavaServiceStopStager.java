@@ -0,0 +1,194 @@
+package org.apache.onami.lifecycle.guava;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.util.concurrent.Service;
+import com.google.inject.TypeLiteral;
+import org.apache.onami.lifecycle.core.AbstractBasicStageable;
+import org.apache.onami.lifecycle.core.ParallelStager;
+import org.apache.onami.lifecycle.core.StageHandler;
+import org.apache.onami.lifecycle.core.Stageable;
+import org.apache.onami.lifecycle.core.TimedStageHandler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.String.format;
+
+/**
+ * A {@link ParallelStager} stopping Guava {@link Service}s and waiting for them to be terminated.
+ * <p>
+ * A service is stopped only once the registered services depending on it are terminated, while independent
+ * services are stopped concurrently. All the services share the same stop deadline, see
+ * {@link #setStopTimeout(long, TimeUnit)}: services not terminated by then are reported to the
+ * {@link StageHandler} with a {@link TimeoutException}, failed services with their failure cause.
+ * {@link TimedStageHandler}s receive the time each service took to terminate, under the {@code stop} operation.
+ *
+ * @since 0.2.0
+ */
+public class GuavaServiceStopStager
+    extends ParallelStager<Service>
+{
+
+    private volatile long stopTimeoutNanos;
+
+    /**
+     * Deadline of the current staging, meaningful only when the stop timeout is set.
+     */
+    private volatile long deadline;
+
+    public GuavaServiceStopStager()
+    {
+        super( Service.class );
+    }
+
+    /**
+     * @param parallelism the number of services stopped at the same time
+     */
+    public GuavaServiceStopStager( int parallelism )
+    {
+        super( Service.class, parallelism );
+    }
+
+    /**
+     * @param executor the executor stopping the services, it is not shut down by the stager
+     */
+    public GuavaServiceStopStager( ExecutorService executor )
+    {
+        super( Service.class, executor );
+    }
+
+    /**
+     * Sets the time all the services have to terminate, the stager waits indefinitely by default.
+     *
+     * @param timeout the maximum time to wait for the services, 0 to wait indefinitely
+     * @param unit    the time unit of the timeout argument
+     */
+    public void setStopTimeout( long timeout, TimeUnit unit )
+    {
+        if ( timeout < 0 )
+        {
+            throw new IllegalArgumentException( "Timeout cannot be negative: " + timeout );
+        }
+        stopTimeoutNanos = unit.toNanos( timeout );
+    }
+
+    /**
+     * Registers a service to be stopped, concurrently with the other services registered without a type.
+     *
+     * @param service the service to be stopped
+     * @return the registered service
+     */
+    public <S extends Service> S register( S service )
+    {
+        register( new ServiceStageable( service ) );
+        return service;
+    }
+
+    /**
+     * Registers a service provisioned for the given type, so that it is stopped after its dependents.
+     */
+    <I> void register( Service service, TypeLiteral<I> type )
+    {
+        Stageable stageable = new ServiceStageable( service );
+        register( stageable );
+        registerType( stageable, type );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stage( StageHandler stageHandler )
+    {
+        deadline = System.nanoTime() + stopTimeoutNanos;
+        super.stage( stageHandler );
+    }
+
+    private final class ServiceStageable
+        extends AbstractBasicStageable<Service>
+    {
+
+        ServiceStageable( Service service )
+        {
+            super( service );
+        }
+
+        @Override
+        public void stage( StageHandler stageHandler )
+        {
+            long start = System.nanoTime();
+            if ( stageHandler instanceof TimedStageHandler )
+            {
+                ( (TimedStageHandler) stageHandler ).onStart( object, getOperation() );
+            }
+
+            Throwable error = null;
+            try
+            {
+                object.stopAsync();
+                if ( stopTimeoutNanos > 0 )
+                {
+                    object.awaitTerminated( Math.max( 0, deadline - System.nanoTime() ), TimeUnit.NANOSECONDS );
+                }
+                else
+                {
+                    object.awaitTerminated();
+                }
+            }
+            catch ( TimeoutException e )
+            {
+                error = new TimeoutException( format( "%s did not terminate within %d ms, state %s", object,
+                                                      TimeUnit.NANOSECONDS.toMillis( stopTimeoutNanos ),
+                                                      object.state() ) );
+            }
+            catch ( IllegalStateException e )
+            {
+                error = object.state() == Service.State.FAILED ? object.failureCause() : e;
+            }
+            catch ( RuntimeException e )
+            {
+                error = e;
+            }
+
+            if ( stageHandler instanceof TimedStageHandler )
+            {
+                ( (TimedStageHandler) stageHandler ).onFinish( object, getOperation(), System.nanoTime() - start );
+            }
+            if ( error != null )
+            {
+                stageHandler.onError( object, error );
+            }
+            else
+            {
+                stageHandler.onSuccess( object );
+            }
+        }
+
+        @Override
+        protected String getOperation()
+        {
+            return "stop";
+        }
+
+    }
+
+}
@@ -0,0 +1,274 @@
+package org.apache.onami.lifecycle.guava;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Service;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.String.format;
+
+/**
+ * Starts the {@link Service}s provisioned by an injector concurrently and tells when all of them are running,
+ * like Guava's {@code ServiceManager} but fed by the injector provisioning, see
+ * {@link GuavaServiceStartModule#GuavaServiceStartModule(ServiceStartGate)}.
+ * <p>
+ * Services provisioned before {@link #startAll()} are started all together when it is invoked, the ones
+ * provisioned afterwards are started as soon as they are provisioned. Each service is started on the gate
+ * executor, so slow {@code doStart()} implementations overlap.
+ *
+ * @since 0.2.0
+ */
+public class ServiceStartGate
+{
+
+    private final Executor executor;
+
+    private final List<Service> services = new CopyOnWriteArrayList<Service>();
+
+    private final ConcurrentMap<Service, Long> startNanos = new ConcurrentHashMap<Service, Long>();
+
+    private final ConcurrentMap<Service, Long> startupNanos = new ConcurrentHashMap<Service, Long>();
+
+    /**
+     * Released once the service listener has been told the service is running, or will never be.
+     */
+    private final Map<Service, CountDownLatch> settled = new ConcurrentHashMap<Service, CountDownLatch>();
+
+    private volatile boolean open;
+
+    /**
+     * Creates a new gate starting the services on daemon threads.
+     */
+    public ServiceStartGate()
+    {
+        this( Executors.newCachedThreadPool( new ThreadFactoryBuilder()
+            .setNameFormat( "onami-service-start-%d" ).setDaemon( true ).build() ) );
+    }
+
+    /**
+     * Creates a new gate starting the services on the given executor.
+     *
+     * @param executor the executor invoking {@link Service#startAsync()}
+     */
+    public ServiceStartGate( Executor executor )
+    {
+        if ( executor == null )
+        {
+            throw new IllegalArgumentException( "Executor must be specified" );
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Registers a provisioned service, starting it if the gate is already open.
+     *
+     * @param service the service to be started
+     */
+    public void register( final Service service )
+    {
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        settled.put( service, latch );
+        service.addListener( new Service.Listener()
+        {
+            @Override
+            public void running()
+            {
+                settle( service, latch, true );
+            }
+
+            @Override
+            public void stopping( Service.State from )
+            {
+                latch.countDown();
+            }
+
+            @Override
+            public void terminated( Service.State from )
+            {
+                latch.countDown();
+            }
+
+            @Override
+            public void failed( Service.State from, Throwable failure )
+            {
+                latch.countDown();
+            }
+        }, MoreExecutors.directExecutor() );
+
+        // listeners are not told about the transitions which happened before they were added
+        Service.State state = service.state();
+        if ( state != Service.State.NEW && state != Service.State.STARTING )
+        {
+            settle( service, latch, state == Service.State.RUNNING );
+        }
+        services.add( service );
+        if ( open )
+        {
+            start( service );
+        }
+    }
+
+    /**
+     * Opens the gate, starting all the services registered so far; does nothing if already open.
+     */
+    public void startAll()
+    {
+        synchronized ( this )
+        {
+            if ( open )
+            {
+                return;
+            }
+            open = true;
+        }
+        for ( Service service : services )
+        {
+            start( service );
+        }
+    }
+
+    /**
+     * Opens the gate if needed and waits for all the registered services to be running.
+     *
+     * @param timeout the maximum time to wait for all the services
+     * @param unit    the time unit of the timeout argument
+     * @throws TimeoutException      if some services are not running once the timeout expires
+     * @throws IllegalStateException if a service failed or was stopped, caused by the service failure if any
+     * @throws InterruptedException  if the current thread was interrupted while waiting
+     */
+    public void awaitHealthy( long timeout, TimeUnit unit )
+        throws TimeoutException, InterruptedException
+    {
+        startAll();
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+        List<Service> pending = new ArrayList<Service>();
+        for ( Service service : services )
+        {
+            if ( !settled.get( service ).await( Math.max( 0, deadline - System.nanoTime() ), TimeUnit.NANOSECONDS ) )
+            {
+                pending.add( service );
+            }
+            else if ( !startupNanos.containsKey( service ) )
+            {
+                Throwable cause = service.state() == Service.State.FAILED ? service.failureCause() : null;
+                throw new IllegalStateException( format( "Service %s did not start", service ), cause );
+            }
+        }
+        if ( !pending.isEmpty() )
+        {
+            throw new TimeoutException( format( "Services not running after %d ms: %s", unit.toMillis( timeout ),
+                                                pending ) );
+        }
+    }
+
+    /**
+     * @return true if all the registered services are running
+     */
+    public boolean isHealthy()
+    {
+        for ( Service service : services )
+        {
+            if ( service.state() != Service.State.RUNNING )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the registered services, in provisioning order
+     */
+    public List<Service> getServices()
+    {
+        return Collections.unmodifiableList( services );
+    }
+
+    /**
+     * Returns the time each service took from being started to be running, for the services already running;
+     * services started by someone else report 0.
+     *
+     * @return the startup durations in nanoseconds, in provisioning order
+     */
+    public Map<Service, Long> getStartupTimings()
+    {
+        Map<Service, Long> timings = new LinkedHashMap<Service, Long>();
+        for ( Service service : services )
+        {
+            Long nanos = startupNanos.get( service );
+            if ( nanos != null )
+            {
+                timings.put( service, nanos );
+            }
+        }
+        return timings;
+    }
+
+    /**
+     * Releases the latch of a service which is running, or will never be.
+     */
+    private void settle( Service service, CountDownLatch latch, boolean running )
+    {
+        if ( running )
+        {
+            // services started by someone else have no known startup time
+            Long start = startNanos.get( service );
+            startupNanos.putIfAbsent( service, start != null ? System.nanoTime() - start : 0L );
+        }
+        latch.countDown();
+    }
+
+    private void start( final Service service )
+    {
+        executor.execute( new Runnable()
+        {
+            public void run()
+            {
+                if ( service.state() == Service.State.NEW && startNanos.putIfAbsent( service, System.nanoTime() ) == null )
+                {
+                    try
+                    {
+                        service.startAsync();
+                    }
+                    catch ( IllegalStateException e )
+                    {
+                        // started by someone else meanwhile
+                    }
+                }
+            }
+        } );
+    }
+
+}
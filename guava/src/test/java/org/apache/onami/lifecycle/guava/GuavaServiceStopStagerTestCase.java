@@ -0,0 +1,253 @@
+package org.apache.onami.lifecycle.guava;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.util.concurrent.AbstractService;
+import com.google.common.util.concurrent.Service;
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import org.apache.onami.lifecycle.core.TimedStageHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.inject.Guice.createInjector;
+import static java.util.Arrays.asList;
+
+public final class GuavaServiceStopStagerTestCase
+{
+
+    public static class StopLog
+    {
+        final List<String> stopped = Collections.synchronizedList( new ArrayList<String>() );
+
+        final CountDownLatch stopping = new CountDownLatch( 2 );
+    }
+
+    /**
+     * Terminates only once another service is stopping as well.
+     */
+    public static class OverlappingService
+        extends AbstractService
+    {
+        @Inject
+        StopLog log;
+
+        @Override
+        protected void doStart()
+        {
+            notifyStarted();
+        }
+
+        @Override
+        protected void doStop()
+        {
+            log.stopping.countDown();
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        if ( log.stopping.await( 5, TimeUnit.SECONDS ) )
+                        {
+                            log.stopped.add( OverlappingService.this.getClass().getSimpleName() );
+                            notifyStopped();
+                            return;
+                        }
+                        notifyFailed( new TimeoutException( "services were not stopped concurrently" ) );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        notifyFailed( e );
+                    }
+                }
+            }.start();
+        }
+    }
+
+    public static class RecordingService
+        extends AbstractService
+    {
+        @Inject
+        StopLog log;
+
+        @Override
+        protected void doStart()
+        {
+            notifyStarted();
+        }
+
+        @Override
+        protected void doStop()
+        {
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep( 50 );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        // stop anyway
+                    }
+                    log.stopped.add( RecordingService.this.getClass().getSimpleName() );
+                    notifyStopped();
+                }
+            }.start();
+        }
+    }
+
+    public static class Dependency
+        extends RecordingService
+    {
+    }
+
+    public static class Dependent
+        extends RecordingService
+    {
+        @Inject
+        Dependency dependency;
+    }
+
+    public static class HangingService
+        extends AbstractService
+    {
+        @Override
+        protected void doStart()
+        {
+            notifyStarted();
+        }
+
+        @Override
+        protected void doStop()
+        {
+            // never notifies
+        }
+    }
+
+    private static final class RecordingHandler
+        implements TimedStageHandler
+    {
+        final List<String> operations = Collections.synchronizedList( new ArrayList<String>() );
+
+        final List<Object> succeeded = Collections.synchronizedList( new ArrayList<Object>() );
+
+        final List<Throwable> errors = Collections.synchronizedList( new ArrayList<Throwable>() );
+
+        @Override
+        public <I> void onStart( I injectee, String operation )
+        {
+        }
+
+        @Override
+        public <I> void onFinish( I injectee, String operation, long nanos )
+        {
+            operations.add( operation );
+        }
+
+        @Override
+        public <I> void onSuccess( I injectee )
+        {
+            succeeded.add( injectee );
+        }
+
+        @Override
+        public <I, E extends Throwable> void onError( I injectee, E error )
+        {
+            errors.add( error );
+        }
+    }
+
+    private Injector createStoppingInjector( GuavaServiceStopModule module, final StopLog log )
+    {
+        return createInjector( module, new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( StopLog.class ).toInstance( log );
+            }
+        } );
+    }
+
+    @Test
+    public void stagerShouldStopIndependentServicesConcurrently()
+    {
+        GuavaServiceStopModule module = new GuavaServiceStopModule( new GuavaServiceStopStager( 2 ) );
+        Injector injector = createStoppingInjector( module, new StopLog() );
+        Service first = injector.getInstance( OverlappingService.class ).startAsync();
+        Service second = injector.getInstance( OverlappingService.class ).startAsync();
+
+        RecordingHandler handler = new RecordingHandler();
+        module.getStager().stage( handler );
+
+        Assert.assertEquals( Service.State.TERMINATED, first.state() );
+        Assert.assertEquals( Service.State.TERMINATED, second.state() );
+        Assert.assertEquals( 2, handler.succeeded.size() );
+        Assert.assertEquals( 0, handler.errors.size() );
+        Assert.assertEquals( 2, handler.operations.size() );
+        Assert.assertEquals( "stop", handler.operations.get( 0 ) );
+    }
+
+    @Test
+    public void stagerShouldStopDependenciesOnceTheirDependentsTerminated()
+    {
+        GuavaServiceStopModule module = new GuavaServiceStopModule();
+        StopLog log = new StopLog();
+        Injector injector = createStoppingInjector( module, log );
+        Dependent dependent = injector.getInstance( Dependent.class );
+        dependent.startAsync().awaitRunning();
+        dependent.dependency.startAsync().awaitRunning();
+
+        module.getStager().stage();
+
+        Assert.assertEquals( Service.State.TERMINATED, dependent.dependency.state() );
+        Assert.assertEquals( asList( "Dependent", "Dependency" ), log.stopped );
+    }
+
+    @Test
+    public void stagerShouldReportServicesNotTerminatedByTheDeadline()
+    {
+        GuavaServiceStopStager stager = new GuavaServiceStopStager();
+        stager.setStopTimeout( 100, TimeUnit.MILLISECONDS );
+        GuavaServiceStopModule module = new GuavaServiceStopModule( stager );
+        Injector injector = createStoppingInjector( module, new StopLog() );
+        injector.getInstance( HangingService.class ).startAsync().awaitRunning();
+
+        RecordingHandler handler = new RecordingHandler();
+        stager.stage( handler );
+
+        Assert.assertEquals( 1, handler.errors.size() );
+        Assert.assertTrue( handler.errors.get( 0 ) instanceof TimeoutException );
+    }
+
+}
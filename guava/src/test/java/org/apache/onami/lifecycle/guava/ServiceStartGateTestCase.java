@@ -0,0 +1,199 @@
+package org.apache.onami.lifecycle.guava;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.util.concurrent.AbstractService;
+import com.google.common.util.concurrent.Service;
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.inject.Guice.createInjector;
+
+public final class ServiceStartGateTestCase
+{
+
+    private static final int SIZE = 4;
+
+    public static final class LatchedService
+        extends AbstractService
+    {
+        private final CountDownLatch latch;
+
+        @Inject
+        public LatchedService( CountDownLatch latch )
+        {
+            this.latch = latch;
+        }
+
+        @Override
+        protected void doStart()
+        {
+            // each service is running only once all of them are starting
+            latch.countDown();
+            try
+            {
+                if ( latch.await( 5, TimeUnit.SECONDS ) )
+                {
+                    notifyStarted();
+                }
+                else
+                {
+                    notifyFailed( new TimeoutException( "services did not start concurrently" ) );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                notifyFailed( e );
+            }
+        }
+
+        @Override
+        protected void doStop()
+        {
+            notifyStopped();
+        }
+    }
+
+    public static final class FailingService
+        extends AbstractService
+    {
+        @Override
+        protected void doStart()
+        {
+            notifyFailed( new IllegalArgumentException( "failed" ) );
+        }
+
+        @Override
+        protected void doStop()
+        {
+            notifyStopped();
+        }
+    }
+
+    public static final class NeverStartingService
+        extends AbstractService
+    {
+        @Override
+        protected void doStart()
+        {
+            // never notifies
+        }
+
+        @Override
+        protected void doStop()
+        {
+            notifyStopped();
+        }
+    }
+
+    private Injector createGatedInjector( final CountDownLatch latch )
+    {
+        return createInjector( new GuavaServiceStartModule( new ServiceStartGate() ), new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( CountDownLatch.class ).toInstance( latch );
+            }
+        } );
+    }
+
+    @Test
+    public void gateShouldStartServicesConcurrently()
+        throws Exception
+    {
+        Injector injector = createGatedInjector( new CountDownLatch( SIZE ) );
+        for ( int i = 0; i < SIZE; i++ )
+        {
+            Assert.assertEquals( Service.State.NEW, injector.getInstance( LatchedService.class ).state() );
+        }
+
+        ServiceStartGate gate = injector.getInstance( ServiceStartGate.class );
+        Assert.assertFalse( gate.isHealthy() );
+        gate.awaitHealthy( 10, TimeUnit.SECONDS );
+
+        Assert.assertTrue( gate.isHealthy() );
+        Assert.assertEquals( SIZE, gate.getServices().size() );
+        Assert.assertEquals( gate.getServices(), new ArrayList<Service>( gate.getStartupTimings().keySet() ) );
+    }
+
+    @Test
+    public void gateShouldStartServicesProvisionedOnceOpen()
+        throws Exception
+    {
+        Injector injector = createGatedInjector( new CountDownLatch( 1 ) );
+        ServiceStartGate gate = injector.getInstance( ServiceStartGate.class );
+        gate.startAll();
+
+        LatchedService service = injector.getInstance( LatchedService.class );
+        gate.awaitHealthy( 10, TimeUnit.SECONDS );
+        Assert.assertEquals( Service.State.RUNNING, service.state() );
+    }
+
+    @Test
+    public void gateShouldAcceptServicesAlreadyRunning()
+        throws Exception
+    {
+        LatchedService service = new LatchedService( new CountDownLatch( 1 ) );
+        service.startAsync().awaitRunning();
+        ServiceStartGate gate = new ServiceStartGate();
+        gate.register( service );
+
+        gate.awaitHealthy( 10, TimeUnit.SECONDS );
+        Assert.assertTrue( gate.isHealthy() );
+        Assert.assertEquals( Long.valueOf( 0 ), gate.getStartupTimings().get( service ) );
+    }
+
+    @Test
+    public void gateShouldReportFailedServices()
+        throws Exception
+    {
+        Injector injector = createGatedInjector( new CountDownLatch( 0 ) );
+        injector.getInstance( FailingService.class );
+
+        try
+        {
+            injector.getInstance( ServiceStartGate.class ).awaitHealthy( 10, TimeUnit.SECONDS );
+            Assert.fail();
+        }
+        catch ( IllegalStateException e )
+        {
+            Assert.assertEquals( "failed", e.getCause().getMessage() );
+        }
+    }
+
+    @Test( expected = TimeoutException.class )
+    public void gateShouldTimeOutWaitingForStartingServices()
+        throws Exception
+    {
+        Injector injector = createGatedInjector( new CountDownLatch( 0 ) );
+        injector.getInstance( NeverStartingService.class );
+        injector.getInstance( ServiceStartGate.class ).awaitHealthy( 100, TimeUnit.MILLISECONDS );
+    }
+
+}
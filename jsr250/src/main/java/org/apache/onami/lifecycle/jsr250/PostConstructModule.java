@@ -19,12 +19,23 @@ package org.apache.onami.lifecycle.jsr250;
  * under the License.
  */
 
+import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.Matcher;
+import org.apache.onami.lifecycle.core.InitializationBarrier;
 import org.apache.onami.lifecycle.core.LifeCycleModule;
 
 import javax.annotation.PostConstruct;
+import java.util.List;
+
+import static com.google.inject.matcher.Matchers.not;
+import static java.util.Collections.singletonList;
 
 /**
  * Guice module to register methods to be invoked after injection is complete.
+ * <p>
+ * The {@code @PostConstruct} methods of the types matching an asynchronous matcher run on the
+ * {@link InitializationBarrier} executor: the injectee is handed out right away, the application awaits
+ * its initialization through the barrier, which is bound by the module.
  *
  * @author Mikhail Mazursky
  */
@@ -32,10 +43,44 @@ public class PostConstructModule
     extends LifeCycleModule
 {
 
+    private final Matcher<? super TypeLiteral<?>> asyncTypes;
+
+    private final InitializationBarrier barrier;
+
+    public PostConstructModule()
+    {
+        this.asyncTypes = null;
+        this.barrier = null;
+    }
+
+    /**
+     * @param asyncTypes the types whose {@code @PostConstruct} methods run asynchronously
+     * @param barrier    tracks the asynchronous initializations
+     * @since 0.2.0
+     */
+    public PostConstructModule( Matcher<? super TypeLiteral<?>> asyncTypes, InitializationBarrier barrier )
+    {
+        if ( asyncTypes == null || barrier == null )
+        {
+            throw new IllegalArgumentException( "Asynchronous types and initialization barrier must be specified" );
+        }
+        this.asyncTypes = asyncTypes;
+        this.barrier = barrier;
+    }
+
     @Override
     protected void configure()
     {
-        bindLifeCycle( PostConstruct.class );
+        if ( barrier == null )
+        {
+            bindLifeCycle( PostConstruct.class );
+            return;
+        }
+
+        List<Class<PostConstruct>> annotations = singletonList( PostConstruct.class );
+        bindLifeCycle( annotations, not( asyncTypes ) );
+        bindAsyncLifeCycle( annotations, asyncTypes, barrier );
+        bind( InitializationBarrier.class ).toInstance( barrier );
     }
 
 }
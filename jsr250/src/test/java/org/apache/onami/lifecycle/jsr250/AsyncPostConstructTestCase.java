@@ -0,0 +1,172 @@
+package org.apache.onami.lifecycle.jsr250;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Injector;
+import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.AbstractMatcher;
+import org.apache.onami.lifecycle.core.InitializationBarrier;
+import org.apache.onami.lifecycle.core.InitializationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.inject.Guice.createInjector;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class AsyncPostConstructTestCase
+{
+
+    private ExecutorService executor;
+
+    private InitializationBarrier barrier;
+
+    private Injector injector;
+
+    @Before
+    public void setUp()
+    {
+        SlowInit.RELEASE = new CountDownLatch( 1 );
+        executor = Executors.newCachedThreadPool();
+        barrier = new InitializationBarrier( executor );
+        injector = createInjector( new PostConstructModule( new AbstractMatcher<TypeLiteral<?>>()
+        {
+
+            public boolean matches( TypeLiteral<?> type )
+            {
+                return type.getRawType().isAnnotationPresent( Async.class );
+            }
+
+        }, barrier ) );
+    }
+
+    @After
+    public void tearDown()
+    {
+        SlowInit.RELEASE.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void asyncInitializationDoesNotBlockInjection()
+        throws Exception
+    {
+        SlowInit slow = injector.getInstance( SlowInit.class );
+        assertFalse( slow.initialized );
+        assertEquals( 1, injector.getInstance( InitializationBarrier.class ).getOutstanding() );
+
+        SlowInit.RELEASE.countDown();
+        barrier.await( 10, TimeUnit.SECONDS );
+        assertTrue( slow.initialized );
+        assertEquals( 0, barrier.getOutstanding() );
+    }
+
+    @Test
+    public void syncInitializationStillRunsOnTheInjectingThread()
+    {
+        assertSame( Thread.currentThread(), injector.getInstance( SyncInit.class ).thread );
+        assertEquals( 0, barrier.getOutstanding() );
+    }
+
+    @Test( expected = TimeoutException.class )
+    public void awaitTimesOut()
+        throws Exception
+    {
+        injector.getInstance( SlowInit.class );
+        barrier.await( 50, TimeUnit.MILLISECONDS );
+    }
+
+    @Test
+    public void asyncFailuresAreAggregatedAndReportedOnce()
+        throws Exception
+    {
+        injector.getInstance( FailingInit.class );
+        injector.getInstance( FailingInit.class );
+        try
+        {
+            barrier.await( 10, TimeUnit.SECONDS );
+            fail( "Failures not reported" );
+        }
+        catch ( InitializationException e )
+        {
+            assertEquals( 2, e.getFailures().size() );
+        }
+
+        // failures are reported once
+        SlowInit.RELEASE.countDown();
+        injector.getInstance( SlowInit.class );
+        barrier.await( 10, TimeUnit.SECONDS );
+    }
+
+    @Async
+    public static class SlowInit
+    {
+
+        static volatile CountDownLatch RELEASE;
+
+        volatile boolean initialized;
+
+        @PostConstruct
+        public void init()
+            throws InterruptedException
+        {
+            RELEASE.await();
+            initialized = true;
+        }
+
+    }
+
+    public static class SyncInit
+    {
+
+        Thread thread;
+
+        @PostConstruct
+        public void init()
+        {
+            thread = Thread.currentThread();
+        }
+
+    }
+
+    @Async
+    public static class FailingInit
+    {
+
+        @PostConstruct
+        public void init()
+        {
+            throw new IllegalStateException( "failed" );
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+package org.apache.onami.lifecycle.processor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Annotation processor generating the index of the compiled classes declaring methods with
+ * runtime-retained annotations, i.e. the classes the lifecycle listeners look for.
+ * <p>
+ * The index is written to {@value #INDEX_RESOURCE}, one binary class name per line:
+ * <pre>
+ * com.acme.Service
+ * com.acme.Service$Worker
+ * </pre>
+ * At runtime, the modules with index preloading enabled scan the listed classes ahead of time,
+ * see {@code org.apache.onami.lifecycle.core.LifeCycleModule#setIndexPreloading}. The index never
+ * replaces the scanning of a class, so an index outdated by a later compilation can't hide
+ * lifecycle methods. Enable the processor just adding this artifact to the compiler class path.
+ *
+ * @since 0.2.0
+ */
+@SupportedAnnotationTypes( "*" )
+public final class LifeCycleIndexProcessor
+    extends AbstractProcessor
+{
+
+    /**
+     * The index location, must be kept aligned with the runtime index reader.
+     */
+    public static final String INDEX_RESOURCE = "META-INF/onami/lifecycle.index";
+
+    /**
+     * The binary names of the annotated classes processed so far, in order of appearance.
+     */
+    private final Set<String> index = new LinkedHashSet<String>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv )
+    {
+        for ( TypeElement type : ElementFilter.typesIn( roundEnv.getRootElements() ) )
+        {
+            indexType( type );
+        }
+
+        if ( roundEnv.processingOver() && !index.isEmpty() )
+        {
+            writeIndex();
+        }
+
+        // other processors may claim the same annotations
+        return false;
+    }
+
+    private void indexType( TypeElement type )
+    {
+        if ( hasAnnotatedMethods( type ) )
+        {
+            index.add( processingEnv.getElementUtils().getBinaryName( type ).toString() );
+        }
+
+        for ( Element enclosed : type.getEnclosedElements() )
+        {
+            if ( enclosed.getKind().isClass() || enclosed.getKind().isInterface() )
+            {
+                indexType( (TypeElement) enclosed );
+            }
+        }
+    }
+
+    private static boolean hasAnnotatedMethods( TypeElement type )
+    {
+        for ( ExecutableElement method : ElementFilter.methodsIn( type.getEnclosedElements() ) )
+        {
+            for ( AnnotationMirror annotation : method.getAnnotationMirrors() )
+            {
+                if ( isRuntimeRetained( (TypeElement) annotation.getAnnotationType().asElement() ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRuntimeRetained( TypeElement annotationType )
+    {
+        Retention retention = annotationType.getAnnotation( Retention.class );
+        return retention != null && retention.value() == RetentionPolicy.RUNTIME;
+    }
+
+    private void writeIndex()
+    {
+        try
+        {
+            FileObject resource =
+                processingEnv.getFiler().createResource( StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE );
+            Writer writer = new OutputStreamWriter( resource.openOutputStream(), "UTF-8" );
+            try
+            {
+                writer.write( "# Generated by " + getClass().getName() + ", do not edit\n" );
+                for ( String className : index )
+                {
+                    writer.write( className );
+                    writer.write( '\n' );
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR,
+                                                      "Impossible to write " + INDEX_RESOURCE + ": " + e );
+        }
+    }
+
+}
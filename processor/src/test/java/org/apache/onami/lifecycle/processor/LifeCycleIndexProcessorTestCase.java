@@ -0,0 +1,105 @@
+package org.apache.onami.lifecycle.processor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public final class LifeCycleIndexProcessorTestCase
+{
+
+    private static final String SOURCE =
+        "package test;\n"
+        + "import java.lang.annotation.*;\n"
+        + "public class Service {\n"
+        + "  @Retention(RetentionPolicy.RUNTIME) public @interface Start {}\n"
+        + "  @Retention(RetentionPolicy.CLASS) public @interface Ignored {}\n"
+        + "  @Start public void start() {}\n"
+        + "  @Start @Deprecated public void restart(String reason, int[] codes) {}\n"
+        + "  @Ignored public void ignored() {}\n"
+        + "  public void plain() {}\n"
+        + "  public static class Nested { @Ignored public void ignored() {} }\n"
+        + "  public static class Worker { @Start public void start() {} }\n"
+        + "}\n";
+
+    @Test
+    public void indexShouldListTheClassesDeclaringRuntimeAnnotatedMethods()
+        throws Exception
+    {
+        File output = File.createTempFile( "onami-index", "" );
+        Assert.assertTrue( output.delete() && output.mkdir() );
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager( null, null, null );
+        fileManager.setLocation( StandardLocation.CLASS_OUTPUT, Collections.singleton( output ) );
+        JavaFileObject source = new SimpleJavaFileObject( URI.create( "string:///test/Service.java" ),
+                                                          JavaFileObject.Kind.SOURCE )
+        {
+            @Override
+            public CharSequence getCharContent( boolean ignoreEncodingErrors )
+            {
+                return SOURCE;
+            }
+        };
+        JavaCompiler.CompilationTask task =
+            compiler.getTask( null, fileManager, null, null, null, Collections.singleton( source ) );
+        task.setProcessors( Collections.singleton( new LifeCycleIndexProcessor() ) );
+        Assert.assertTrue( task.call() );
+        fileManager.close();
+
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader( new InputStreamReader(
+            new FileInputStream( new File( output, LifeCycleIndexProcessor.INDEX_RESOURCE ) ), "UTF-8" ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                if ( !line.startsWith( "#" ) )
+                {
+                    lines.add( line );
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        Assert.assertEquals( Arrays.asList( "test.Service", "test.Service$Worker" ), lines );
+    }
+
+}
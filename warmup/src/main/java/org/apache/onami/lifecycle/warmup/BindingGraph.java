@@ -0,0 +1,197 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Binding;
+import com.google.inject.ConfigurationException;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.ConstructorBinding;
+import com.google.inject.spi.Dependency;
+import com.google.inject.spi.HasDependencies;
+import com.google.inject.spi.InstanceBinding;
+import com.google.inject.spi.LinkedKeyBinding;
+import com.google.inject.spi.ProviderKeyBinding;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The bindings of an {@link Injector} seen as a graph of keys, so that warm up dependencies follow what the
+ * injector actually provides: linked bindings lead to their target, provider bindings and {@code @Provides}
+ * methods to their own dependencies, and {@code Provider<T>} injections to {@code T}.
+ * <p>
+ * Nodes are resolved lazily and cached, the injector bindings never change.
+ */
+final class BindingGraph
+{
+
+    private final Injector injector;
+
+    private final ConcurrentMap<Key<?>, Node> nodes = new ConcurrentHashMap<Key<?>, Node>();
+
+    BindingGraph( Injector injector )
+    {
+        this.injector = injector;
+    }
+
+    /**
+     * @return the injector the bindings come from
+     */
+    Injector getInjector()
+    {
+        return injector;
+    }
+
+    /**
+     * @param key a key
+     * @return the node the key is bound to
+     */
+    Node node( Key<?> key )
+    {
+        Node node = nodes.get( key );
+        if ( node == null )
+        {
+            node = resolve( key );
+            Node previous = nodes.putIfAbsent( key, node );
+            if ( previous != null )
+            {
+                node = previous;
+            }
+        }
+        return node;
+    }
+
+    private Node resolve( Key<?> key )
+    {
+        Binding<?> binding;
+        try
+        {
+            binding = injector.getBinding( key );
+        }
+        catch ( ConfigurationException e )
+        {
+            // not provided by the injector
+            return new Node( null, Collections.<Key<?>>emptyList() );
+        }
+
+        if ( binding instanceof LinkedKeyBinding )
+        {
+            Key<?> target = ( (LinkedKeyBinding<?>) binding ).getLinkedKey();
+            return new Node( null, Collections.<Key<?>>singletonList( target ) );
+        }
+        if ( binding instanceof ProviderKeyBinding )
+        {
+            Key<?> provider = ( (ProviderKeyBinding<?>) binding ).getProviderKey();
+            return new Node( null, Collections.<Key<?>>singletonList( provider ) );
+        }
+
+        TypeLiteral<?> constructed = null;
+        if ( binding instanceof ConstructorBinding )
+        {
+            constructed = ( (ConstructorBinding<?>) binding ).getConstructor().getDeclaringType();
+        }
+        else if ( binding instanceof InstanceBinding )
+        {
+            constructed = TypeLiteral.get( ( (InstanceBinding<?>) binding ).getInstance().getClass() );
+        }
+
+        List<Key<?>> dependencies = new ArrayList<Key<?>>();
+        if ( binding instanceof HasDependencies )
+        {
+            for ( Dependency<?> dependency : ( (HasDependencies) binding ).getDependencies() )
+            {
+                dependencies.add( provided( dependency.getKey() ) );
+            }
+        }
+        return new Node( constructed, dependencies );
+    }
+
+    /**
+     * @return the key of {@code T} for a key of {@code Provider<T>}, the given key otherwise
+     */
+    private static Key<?> provided( Key<?> key )
+    {
+        Type type = key.getTypeLiteral().getType();
+        if ( !( type instanceof ParameterizedType ) )
+        {
+            return key;
+        }
+        ParameterizedType parameterized = (ParameterizedType) type;
+        if ( parameterized.getRawType() != Provider.class && parameterized.getRawType() != javax.inject.Provider.class )
+        {
+            return key;
+        }
+        Type provided = parameterized.getActualTypeArguments()[0];
+        Annotation annotation = key.getAnnotation();
+        if ( annotation != null )
+        {
+            return Key.get( provided, annotation );
+        }
+        if ( key.getAnnotationType() != null )
+        {
+            return Key.get( provided, key.getAnnotationType() );
+        }
+        return Key.get( provided );
+    }
+
+    /**
+     * What a key is bound to.
+     */
+    static final class Node
+    {
+
+        private final TypeLiteral<?> constructed;
+
+        private final List<Key<?>> dependencies;
+
+        Node( TypeLiteral<?> constructed, List<Key<?>> dependencies )
+        {
+            this.constructed = constructed;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * @return the type of the object injected by the injector, null if created by someone else
+         */
+        TypeLiteral<?> getConstructed()
+        {
+            return constructed;
+        }
+
+        /**
+         * @return the keys needed to provide the object
+         */
+        List<Key<?>> getDependencies()
+        {
+            return dependencies;
+        }
+
+    }
+
+}
@@ -0,0 +1,237 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link ClassListTraining} run: the class list written, and the startup cost measured when
+ * the warm up completed, compared with the last training run started without the archive when this one
+ * was started with it.
+ *
+ * @since 0.2.0
+ */
+public final class ClassListReport
+{
+
+    private static final String CLASS_COUNT = "classCount";
+
+    private static final String LOADED_CLASS_COUNT = "loadedClassCount";
+
+    private static final String STARTUP_NANOS = "startupNanos";
+
+    private final File classList;
+
+    private final int classCount;
+
+    private final boolean fromLoadedClasses;
+
+    private final long loadedClassCount;
+
+    private final long startupNanos;
+
+    private final boolean archiveInUse;
+
+    private final boolean dynamicArchiveWritten;
+
+    private final ClassListReport baseline;
+
+    ClassListReport( File classList, int classCount, boolean fromLoadedClasses, long loadedClassCount,
+                     long startupNanos, boolean archiveInUse, boolean dynamicArchiveWritten, ClassListReport baseline )
+    {
+        this.classList = classList;
+        this.classCount = classCount;
+        this.fromLoadedClasses = fromLoadedClasses;
+        this.loadedClassCount = loadedClassCount;
+        this.startupNanos = startupNanos;
+        this.archiveInUse = archiveInUse;
+        this.dynamicArchiveWritten = dynamicArchiveWritten;
+        this.baseline = baseline;
+    }
+
+    /**
+     * @return the class list file, in the format expected by {@code -XX:SharedClassListFile}
+     */
+    public File getClassList()
+    {
+        return classList;
+    }
+
+    /**
+     * @return the number of classes in the class list
+     */
+    public int getClassCount()
+    {
+        return classCount;
+    }
+
+    /**
+     * @return true if the class list holds all the classes the JVM loaded, false if it was derived
+     *         from the injector bindings because the JVM could not list them
+     */
+    public boolean isFromLoadedClasses()
+    {
+        return fromLoadedClasses;
+    }
+
+    /**
+     * @return the number of classes loaded since the JVM started
+     */
+    public long getLoadedClassCount()
+    {
+        return loadedClassCount;
+    }
+
+    /**
+     * @return the time elapsed from the JVM start until the warm up completed, in nanoseconds
+     */
+    public long getStartupNanos()
+    {
+        return startupNanos;
+    }
+
+    /**
+     * @return true if the JVM was started with a shared archive, see {@code -XX:SharedArchiveFile}
+     */
+    public boolean isArchiveInUse()
+    {
+        return archiveInUse;
+    }
+
+    /**
+     * @return true if a dynamic archive was dumped, see {@link ClassListTraining#setDynamicArchive(File)}
+     */
+    public boolean isDynamicArchiveWritten()
+    {
+        return dynamicArchiveWritten;
+    }
+
+    /**
+     * @return the report of the last training run started without the archive, when this one was started with
+     *         it, null otherwise
+     */
+    public ClassListReport getBaseline()
+    {
+        return baseline;
+    }
+
+    /**
+     * Returns a human readable summary of the training: class list written and startup cost, compared with
+     * the baseline when available.
+     *
+     * @return a human readable summary of the training
+     */
+    public String getSummary()
+    {
+        StringBuilder summary = new StringBuilder();
+        summary.append( "Wrote " ).append( classCount ).append( fromLoadedClasses ? " loaded" : " bound" )
+            .append( " classes to " ).append( classList );
+        if ( dynamicArchiveWritten )
+        {
+            summary.append( " and dumped a dynamic archive" );
+        }
+        summary.append( "\nStarted " ).append( archiveInUse ? "with" : "without" ).append( " archive: " )
+            .append( loadedClassCount ).append( " classes loaded in " ).append( millis( startupNanos ) )
+            .append( " ms" );
+        if ( baseline != null )
+        {
+            summary.append( "\nStarted without archive: " ).append( baseline.loadedClassCount )
+                .append( " classes loaded in " ).append( millis( baseline.startupNanos ) ).append( " ms, " )
+                .append( millis( baseline.startupNanos - startupNanos ) ).append( " ms saved" );
+        }
+        return summary.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return getSummary();
+    }
+
+    /**
+     * Writes the startup cost, to compare it with later runs.
+     */
+    void write( File file )
+        throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty( CLASS_COUNT, String.valueOf( classCount ) );
+        properties.setProperty( LOADED_CLASS_COUNT, String.valueOf( loadedClassCount ) );
+        properties.setProperty( STARTUP_NANOS, String.valueOf( startupNanos ) );
+        OutputStream output = new FileOutputStream( file );
+        try
+        {
+            properties.store( output, "Startup without archive, written by " + ClassListTraining.class.getName() );
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    /**
+     * @return the startup cost written by {@link #write(File)}, null if the file does not exist or is invalid
+     */
+    static ClassListReport read( File classList, File file )
+        throws IOException
+    {
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream input = new FileInputStream( file );
+        try
+        {
+            properties.load( input );
+        }
+        finally
+        {
+            input.close();
+        }
+        try
+        {
+            return new ClassListReport( classList, Integer.parseInt( properties.getProperty( CLASS_COUNT ) ), true,
+                                        Long.parseLong( properties.getProperty( LOADED_CLASS_COUNT ) ),
+                                        Long.parseLong( properties.getProperty( STARTUP_NANOS ) ), false, false,
+                                        null );
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
+    private static long millis( long nanos )
+    {
+        return TimeUnit.NANOSECONDS.toMillis( nanos );
+    }
+
+}
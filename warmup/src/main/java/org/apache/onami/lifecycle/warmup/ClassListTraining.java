@@ -0,0 +1,338 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.ConstructorBinding;
+import com.google.inject.spi.InstanceBinding;
+import com.google.inject.spi.LinkedKeyBinding;
+
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Training run for class data sharing (CDS): once the warm up completed, the application has loaded its working
+ * set, so the loaded classes are written to a class list, to dump a shared archive from with
+ * {@code -Xshare:dump -XX:SharedClassListFile=<class list> -XX:SharedArchiveFile=<archive>}, and the application
+ * is then started with {@code -XX:SharedArchiveFile=<archive>}.
+ * <p>
+ * The loaded classes are listed through the {@code DiagnosticCommand} MBean (Java 9+); when the JVM does not
+ * support it, the class list is derived from the injector bindings and the warmed up types. On JVMs started with
+ * {@code -XX:+RecordDynamicDumpInfo} (Java 17+), a dynamic archive can be dumped directly, see
+ * {@link #setDynamicArchive(File)}.
+ * <p>
+ * The startup cost, from the JVM start until the warm up completed, of runs without archive is kept next to
+ * the class list, so that the report of a run with the archive compares both, see {@link ClassListReport}.
+ * Set it on the stager with {@link WarmUper#setClassListTraining(ClassListTraining)}.
+ *
+ * @since 0.2.0
+ */
+public final class ClassListTraining
+{
+
+    private static final Logger LOGGER = Logger.getLogger( ClassListTraining.class.getName() );
+
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+
+    private final File classList;
+
+    private final File baseline;
+
+    private volatile File dynamicArchive;
+
+    private volatile ClassListReport lastReport;
+
+    /**
+     * @param classList the class list file to write
+     */
+    public ClassListTraining( File classList )
+    {
+        if ( classList == null )
+        {
+            throw new IllegalArgumentException( "Class list file must be specified" );
+        }
+        this.classList = classList;
+        this.baseline = new File( classList.getPath() + ".baseline" );
+    }
+
+    /**
+     * Dumps a dynamic archive as well, when the JVM supports it.
+     *
+     * @param dynamicArchive the dynamic archive file to dump, null not to dump it
+     */
+    public void setDynamicArchive( File dynamicArchive )
+    {
+        this.dynamicArchive = dynamicArchive;
+    }
+
+    /**
+     * Writes the class list and reports the startup cost. {@link WarmUper} calls it once the warm up completed.
+     *
+     * @param injector the injector of the application, to derive the class list from when the JVM can't list
+     *                 the loaded classes, may be null
+     * @return the training report
+     * @throws IOException if the class list can't be written
+     */
+    public ClassListReport finish( Injector injector )
+        throws IOException
+    {
+        return finish( injector, Collections.<TypeLiteral<?>>emptySet() );
+    }
+
+    ClassListReport finish( Injector injector, Set<TypeLiteral<?>> warmedUp )
+        throws IOException
+    {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        long startupNanos = TimeUnit.MILLISECONDS.toNanos( runtime.getUptime() );
+        long loadedClassCount = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+
+        Set<String> classNames = loadedClassNames();
+        boolean fromLoadedClasses = classNames != null;
+        if ( !fromLoadedClasses )
+        {
+            classNames = boundClassNames( injector, warmedUp );
+        }
+        write( classNames );
+
+        File archive = dynamicArchive;
+        boolean dynamicArchiveWritten = archive != null && dumpDynamicArchive( archive );
+        boolean archiveInUse = isArchiveInUse( runtime );
+        ClassListReport report =
+            new ClassListReport( classList, classNames.size(), fromLoadedClasses, loadedClassCount, startupNanos,
+                                 archiveInUse, dynamicArchiveWritten,
+                                 archiveInUse ? ClassListReport.read( classList, baseline ) : null );
+        if ( !archiveInUse )
+        {
+            report.write( baseline );
+        }
+        lastReport = report;
+        return report;
+    }
+
+    /**
+     * @return the class list file
+     */
+    public File getClassList()
+    {
+        return classList;
+    }
+
+    /**
+     * @return the report of the last training, null if it did not happen yet
+     */
+    public ClassListReport getLastReport()
+    {
+        return lastReport;
+    }
+
+    private void write( Set<String> classNames )
+        throws IOException
+    {
+        Writer writer = new OutputStreamWriter( new FileOutputStream( classList ), "UTF-8" );
+        try
+        {
+            for ( String className : classNames )
+            {
+                writer.write( className );
+                writer.write( '\n' );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return the classes loaded by the JVM, in the class list format, null if the JVM can't list them
+     */
+    private static Set<String> loadedClassNames()
+    {
+        String hierarchy;
+        try
+        {
+            hierarchy = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName( DIAGNOSTIC_COMMAND ), "vmClassHierarchy", new Object[]{ null },
+                new String[]{ String[].class.getName() } );
+        }
+        catch ( Exception e )
+        {
+            LOGGER.log( Level.FINE, "Impossible to list the loaded classes, using the bound classes", e );
+            return null;
+        }
+
+        // one class per line, indented according to its depth, followed by its loader: "|  |--java.lang.String/null";
+        // hidden classes also have their address: "|--java.lang.invoke.LambdaForm$MH/0x0000000800c01000/null"
+        Set<String> classNames = new TreeSet<String>();
+        BufferedReader reader = new BufferedReader( new StringReader( hierarchy ) );
+        try
+        {
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                int start = 0;
+                while ( start < line.length() && "|- ".indexOf( line.charAt( start ) ) >= 0 )
+                {
+                    start++;
+                }
+                int end = line.indexOf( '/', start );
+                if ( end > start && line.indexOf( '/', end + 1 ) < 0 )
+                {
+                    addClassName( classNames, line.substring( start, end ) );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            // can't happen reading a string
+            throw new IllegalStateException( e );
+        }
+        return classNames;
+    }
+
+    private static Set<String> boundClassNames( Injector injector, Set<TypeLiteral<?>> warmedUp )
+    {
+        Set<Class<?>> classes = new HashSet<Class<?>>();
+        if ( injector != null )
+        {
+            for ( Binding<?> binding : injector.getAllBindings().values() )
+            {
+                addHierarchy( classes, binding.getKey().getTypeLiteral().getRawType() );
+                if ( binding instanceof ConstructorBinding )
+                {
+                    addHierarchy( classes, ( (ConstructorBinding<?>) binding ).getConstructor()
+                        .getDeclaringType().getRawType() );
+                }
+                else if ( binding instanceof InstanceBinding )
+                {
+                    Object instance = ( (InstanceBinding<?>) binding ).getInstance();
+                    if ( instance != null )
+                    {
+                        addHierarchy( classes, instance.getClass() );
+                    }
+                }
+                else if ( binding instanceof LinkedKeyBinding )
+                {
+                    addHierarchy( classes, ( (LinkedKeyBinding<?>) binding ).getLinkedKey().getTypeLiteral()
+                        .getRawType() );
+                }
+            }
+        }
+        for ( TypeLiteral<?> type : warmedUp )
+        {
+            addHierarchy( classes, type.getRawType() );
+        }
+
+        Set<String> classNames = new TreeSet<String>();
+        for ( Class<?> klass : classes )
+        {
+            if ( isSharable( klass ) )
+            {
+                addClassName( classNames, klass.getName() );
+            }
+        }
+        return classNames;
+    }
+
+    private static void addHierarchy( Set<Class<?>> classes, Class<?> klass )
+    {
+        if ( klass == null || klass.isArray() || klass.isPrimitive() || !classes.add( klass ) )
+        {
+            return;
+        }
+        addHierarchy( classes, klass.getSuperclass() );
+        for ( Class<?> implemented : klass.getInterfaces() )
+        {
+            addHierarchy( classes, implemented );
+        }
+    }
+
+    /**
+     * @return true if the class was loaded by a built-in class loader, the only ones a static archive supports
+     */
+    private static boolean isSharable( Class<?> klass )
+    {
+        ClassLoader loader = klass.getClassLoader();
+        for ( ClassLoader builtIn = ClassLoader.getSystemClassLoader(); builtIn != null; builtIn = builtIn.getParent() )
+        {
+            if ( loader == builtIn )
+            {
+                return true;
+            }
+        }
+        return loader == null;
+    }
+
+    private static void addClassName( Set<String> classNames, String className )
+    {
+        // generated classes, such as lambdas and Guice enhancers, can't be archived from a class list
+        if ( !className.contains( "$$" ) )
+        {
+            classNames.add( className.replace( '.', '/' ) );
+        }
+    }
+
+    private static boolean dumpDynamicArchive( File archive )
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName( DIAGNOSTIC_COMMAND ), "vmCds",
+                new Object[]{ new String[]{ "dynamic_dump", archive.getPath() } },
+                new String[]{ String[].class.getName() } );
+            return archive.isFile();
+        }
+        catch ( Exception e )
+        {
+            LOGGER.log( Level.WARNING, "Impossible to dump the dynamic archive " + archive
+                + ", is the JVM started with -XX:+RecordDynamicDumpInfo?", e );
+            return false;
+        }
+    }
+
+    private static boolean isArchiveInUse( RuntimeMXBean runtime )
+    {
+        for ( String argument : runtime.getInputArguments() )
+        {
+            if ( argument.startsWith( "-XX:SharedArchiveFile" ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
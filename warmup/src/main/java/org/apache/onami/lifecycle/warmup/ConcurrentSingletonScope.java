@@ -0,0 +1,109 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+import com.google.inject.Scope;
+import com.google.inject.internal.CircularDependencyProxy;
+
+/**
+ * Implements {@link ConcurrentSingleton}: each binding is guarded by its own lock, where the Guice singleton
+ * scope holds a lock shared by all the singletons while constructing any of them.
+ * <p>
+ * Two singletons constructed by different threads, each one getting the other one from its constructor,
+ * deadlock; {@link ParallelSingletonModule} avoids it by constructing singletons after their dependencies.
+ */
+final class ConcurrentSingletonScope
+    implements Scope
+{
+
+    static final Scope INSTANCE = new ConcurrentSingletonScope();
+
+    private static final Object NULL = new Object();
+
+    private ConcurrentSingletonScope()
+    {
+        // singleton
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> Provider<T> scope( final Key<T> key, final Provider<T> unscoped )
+    {
+        return new Provider<T>()
+        {
+
+            private volatile Object instance;
+
+            @Override
+            public T get()
+            {
+                Object current = instance;
+                if ( current == null )
+                {
+                    synchronized ( this )
+                    {
+                        current = instance;
+                        if ( current == null )
+                        {
+                            T provided = unscoped.get();
+                            // like the Guice singleton scope, don't remember proxies, they only serve circular
+                            // dependencies
+                            if ( provided instanceof CircularDependencyProxy )
+                            {
+                                return provided;
+                            }
+                            current = provided != null ? provided : NULL;
+                            if ( instance != null && instance != current )
+                            {
+                                throw new ProvisionException( "Provider was reentrant while creating a singleton" );
+                            }
+                            instance = current;
+                        }
+                    }
+                }
+                @SuppressWarnings( "unchecked" )
+                T provided = current != NULL ? (T) current : null;
+                return provided;
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format( "%s[%s]", unscoped, INSTANCE );
+            }
+
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "ConcurrentSingleton";
+    }
+
+}
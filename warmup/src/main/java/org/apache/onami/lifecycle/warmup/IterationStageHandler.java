@@ -0,0 +1,113 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.onami.lifecycle.core.StageHandler;
+import org.apache.onami.lifecycle.core.TimedStageHandler;
+
+/**
+ * Collects the outcome of the iterations of a warm up method, so that it is reported once,
+ * after the last iteration. The timing of each iteration is reported as it happens.
+ */
+final class IterationStageHandler
+    implements TimedStageHandler
+{
+
+    private final StageHandler delegate;
+
+    private Object injectee;
+
+    private Throwable error;
+
+    IterationStageHandler( StageHandler delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return true if an iteration failed, no more iterations should run
+     */
+    boolean isFailed()
+    {
+        return error != null;
+    }
+
+    /**
+     * Reports the outcome of the iterations: the first error, otherwise the success.
+     */
+    void report()
+    {
+        if ( error != null )
+        {
+            delegate.onError( injectee, error );
+        }
+        else if ( injectee != null )
+        {
+            delegate.onSuccess( injectee );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onStart( I injectee, String operation )
+    {
+        if ( delegate instanceof TimedStageHandler )
+        {
+            ( (TimedStageHandler) delegate ).onStart( injectee, operation );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onFinish( I injectee, String operation, long nanos )
+    {
+        if ( delegate instanceof TimedStageHandler )
+        {
+            ( (TimedStageHandler) delegate ).onFinish( injectee, operation, nanos );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I> void onSuccess( I injectee )
+    {
+        this.injectee = injectee;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, E extends Throwable> void onError( I injectee, E error )
+    {
+        this.injectee = injectee;
+        if ( this.error == null )
+        {
+            this.error = error;
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the JIT compiler activity through the {@link CompilationMXBean} total compilation time,
+ * which is accumulated over all the compiler threads.
+ */
+final class JitMonitor
+{
+
+    /**
+     * Compilation time, relative to the quiet period, below which the JIT compiler is considered idle.
+     */
+    private static final int IDLE_PERCENT = 5;
+
+    private static final CompilationMXBean COMPILATION = compilationBean();
+
+    private JitMonitor()
+    {
+        // static utility
+    }
+
+    /**
+     * @return the total compilation time, in milliseconds, -1 if the running JVM does not monitor it
+     */
+    static long compilationMillis()
+    {
+        return COMPILATION != null ? COMPILATION.getTotalCompilationTime() : -1;
+    }
+
+    /**
+     * Waits until the JIT compiler is idle during a whole quiet period, that is when the compilation time
+     * grows by less than {@value #IDLE_PERCENT}% of the period.
+     *
+     * @param quietNanos    the quiet period
+     * @param deadlineNanos the {@link System#nanoTime()} to give up at
+     * @return true if the JIT activity settled, false if it did not before the deadline or is not monitored
+     * @throws InterruptedException if interrupted while waiting
+     */
+    static boolean awaitSettled( long quietNanos, long deadlineNanos )
+        throws InterruptedException
+    {
+        if ( COMPILATION == null )
+        {
+            return false;
+        }
+        long idleMillis = TimeUnit.NANOSECONDS.toMillis( quietNanos ) * IDLE_PERCENT / 100;
+        long before = COMPILATION.getTotalCompilationTime();
+        while ( deadlineNanos - System.nanoTime() >= quietNanos )
+        {
+            TimeUnit.NANOSECONDS.sleep( quietNanos );
+            long after = COMPILATION.getTotalCompilationTime();
+            if ( after - before <= idleMillis )
+            {
+                return true;
+            }
+            before = after;
+        }
+        return false;
+    }
+
+    private static CompilationMXBean compilationBean()
+    {
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        if ( compilation == null || !compilation.isCompilationTimeMonitoringSupported() )
+        {
+            return null;
+        }
+        return compilation;
+    }
+
+}
@@ -0,0 +1,286 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.ProvisionException;
+import com.google.inject.Scope;
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.DefaultBindingScopingVisitor;
+import com.google.inject.spi.LinkedKeyBinding;
+import com.google.inject.spi.Message;
+import jsr166y.ForkJoinPool;
+import org.apache.onami.lifecycle.core.StageHandler;
+import org.apache.onami.lifecycle.core.Stageable;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Instantiates the {@link ConcurrentSingleton} bindings of the injector while it is created, concurrently and in
+ * dependency order, like {@link WarmUper} warms up types: each singleton is constructed once the singletons it
+ * depends on are. When the injector is handed to the application, its concurrent singletons are all constructed.
+ * <p>
+ * The singletons scoped with {@link javax.inject.Singleton} can't be constructed concurrently, the Guice
+ * singleton scope constructs them one at a time behind a global lock: scope the expensive ones with
+ * {@link ConcurrentSingleton} instead. Only explicit bindings are instantiated.
+ * <p>
+ * Failing constructions fail the injector creation. {@link #getReport()} compares the time taken to construct
+ * the singletons concurrently with the time a sequential construction would take.
+ *
+ * @since 0.2.0
+ */
+public class ParallelSingletonModule
+    extends AbstractModule
+{
+
+    private final Instantiator instantiator;
+
+    /**
+     * Constructs the singletons on a {@link ForkJoinPool} sized to the number of available processors.
+     */
+    public ParallelSingletonModule()
+    {
+        this( null );
+    }
+
+    /**
+     * @param executorService the shared executor to construct the singletons on, never shut down by the module,
+     *                        null to use a {@link ForkJoinPool} sized to the number of available processors
+     */
+    public ParallelSingletonModule( ExecutorService executorService )
+    {
+        this.instantiator = new Instantiator( executorService );
+    }
+
+    @Override
+    protected void configure()
+    {
+        bindScope( ConcurrentSingleton.class, ConcurrentSingletonScope.INSTANCE );
+        requestInjection( instantiator );
+    }
+
+    /**
+     * @return the report of the singletons construction, null until the injector is created
+     */
+    public WarmUpReport getReport()
+    {
+        return instantiator.report;
+    }
+
+    /**
+     * Instantiates the singletons once the injector bindings are ready, before the injector is returned.
+     */
+    static final class Instantiator
+    {
+
+        private final ExecutorService executorService;
+
+        private volatile WarmUpReport report;
+
+        Instantiator( ExecutorService executorService )
+        {
+            this.executorService = executorService;
+        }
+
+        @Inject
+        void instantiate( Injector injector )
+        {
+            BindingGraph bindings = new BindingGraph( injector );
+            Map<TypeLiteral<?>, Set<Stageable>> stageables = new LinkedHashMap<TypeLiteral<?>, Set<Stageable>>();
+            for ( Binding<?> binding : injector.getBindings().values() )
+            {
+                if ( isConcurrentSingleton( binding ) )
+                {
+                    TypeLiteral<?> type = constructedType( injector, bindings, binding );
+                    Set<Stageable> typeStageables = stageables.get( type );
+                    if ( typeStageables == null )
+                    {
+                        typeStageables = new LinkedHashSet<Stageable>();
+                        stageables.put( type, typeStageables );
+                    }
+                    typeStageables.add( new SingletonStageable( injector, binding.getKey() ) );
+                }
+            }
+            if ( stageables.isEmpty() )
+            {
+                report = new WarmUpReport( new LinkedHashMap<TypeLiteral<?>, WarmUpReport.Entry>(), 0, false );
+                return;
+            }
+
+            WarmUpGraph graph = WarmUpGraph.build( stageables.keySet(), bindings, CyclePolicy.BREAK );
+            ExecutorService executor = executorService;
+            if ( executor == null )
+            {
+                executor = new ForkJoinPool( Math.min( Runtime.getRuntime().availableProcessors(), graph.size() ) );
+            }
+            ErrorCollector errors = new ErrorCollector();
+            WarmUpExecution execution = new WarmUpExecution( graph, stageables, executor, errors );
+            try
+            {
+                execution.execute( Long.MAX_VALUE );
+                report = execution.report( false );
+            }
+            catch ( InterruptedException e )
+            {
+                report = execution.report( false );
+                Thread.currentThread().interrupt();
+                throw new ProvisionException( "Interrupted while constructing the concurrent singletons", e );
+            }
+            finally
+            {
+                if ( executorService == null )
+                {
+                    executor.shutdown();
+                }
+            }
+            if ( !errors.messages.isEmpty() )
+            {
+                throw new ProvisionException( errors.messages );
+            }
+        }
+
+        private static boolean isConcurrentSingleton( Binding<?> binding )
+        {
+            return binding.acceptScopingVisitor( new DefaultBindingScopingVisitor<Boolean>()
+            {
+
+                @Override
+                public Boolean visitScopeAnnotation( Class<? extends Annotation> scopeAnnotation )
+                {
+                    return scopeAnnotation == ConcurrentSingleton.class;
+                }
+
+                @Override
+                public Boolean visitScope( Scope scope )
+                {
+                    return scope == ConcurrentSingletonScope.INSTANCE;
+                }
+
+                @Override
+                protected Boolean visitOther()
+                {
+                    return false;
+                }
+
+            } );
+        }
+
+        /**
+         * @return the type constructed for the binding, following linked bindings, the bound type when the object
+         *         is provided by someone else
+         */
+        private static TypeLiteral<?> constructedType( Injector injector, BindingGraph bindings, Binding<?> binding )
+        {
+            Binding<?> current = binding;
+            while ( current instanceof LinkedKeyBinding )
+            {
+                current = injector.getBinding( ( (LinkedKeyBinding<?>) current ).getLinkedKey() );
+            }
+            BindingGraph.Node node = bindings.node( current.getKey() );
+            return node.getConstructed() != null ? node.getConstructed() : current.getKey().getTypeLiteral();
+        }
+
+    }
+
+    /**
+     * Constructs a singleton by getting it from the injector.
+     */
+    private static final class SingletonStageable
+        implements Stageable
+    {
+
+        private final Injector injector;
+
+        private final Key<?> key;
+
+        SingletonStageable( Injector injector, Key<?> key )
+        {
+            this.injector = injector;
+            this.key = key;
+        }
+
+        @Override
+        public void stage( StageHandler stageHandler )
+        {
+            Object instance;
+            try
+            {
+                instance = injector.getInstance( key );
+            }
+            catch ( RuntimeException e )
+            {
+                stageHandler.onError( key, e );
+                return;
+            }
+            stageHandler.onSuccess( instance );
+        }
+
+        @Override
+        public String toString()
+        {
+            return key.toString();
+        }
+
+    }
+
+    /**
+     * Collects the construction failures, reported from the constructing threads.
+     */
+    private static final class ErrorCollector
+        implements StageHandler
+    {
+
+        final List<Message> messages = Collections.synchronizedList( new ArrayList<Message>() );
+
+        @Override
+        public <I> void onSuccess( I injectee )
+        {
+            // nothing to collect
+        }
+
+        @Override
+        public <I, E extends Throwable> void onError( I injectee, E error )
+        {
+            if ( error instanceof ProvisionException )
+            {
+                messages.addAll( ( (ProvisionException) error ).getErrorMessages() );
+            }
+            else
+            {
+                messages.add( new Message( Collections.<Object>singletonList( injectee ),
+                                           "Error constructing " + injectee + ": " + error, error ) );
+            }
+        }
+
+    }
+
+}
@@ -29,6 +29,13 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 /**
  * Marks a method as a warm up method. Onami will execute warm up methods
  * in parallel via the {@link WarmUpModule}.
+ * <p>
+ * Warm ups are critical by default: {@link WarmUper#stageCritical(org.apache.onami.lifecycle.core.StageHandler)}
+ * returns once the critical warm ups and the warm ups they depend on are done, the other ones complete
+ * in the background.
+ * <p>
+ * A warm up method can be invoked several times, see {@link #iterations()}, so that the JIT compiler
+ * compiles the code paths it exercises before the application serves requests.
  */
 @Documented
 @Retention( RUNTIME )
@@ -36,4 +43,25 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 public @interface WarmUp
 {
 
+    /**
+     * @return false if the application can be ready before this warm up is done
+     */
+    boolean critical() default true;
+
+    /**
+     * When several warm up methods of a class are iterated, each of them runs the largest number of iterations
+     * within the largest time budget. Iterating stops at the first failure.
+     *
+     * @return the number of times the method is invoked
+     * @since 0.2.0
+     */
+    int iterations() default 1;
+
+    /**
+     * @return the maximum time spent iterating the method, in milliseconds, 0 for no limit; the method
+     *         is invoked at least once
+     * @since 0.2.0
+     */
+    long maxIterationMs() default 0;
+
 }
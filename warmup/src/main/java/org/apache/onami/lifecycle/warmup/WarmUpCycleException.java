@@ -0,0 +1,72 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.TypeLiteral;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by {@link WarmUper}, before any warm up runs, when the warm up dependency graph contains
+ * a cycle and the {@link CyclePolicy#FAIL} policy is set.
+ *
+ * @since 0.2.0
+ */
+public final class WarmUpCycleException
+    extends IllegalStateException
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<TypeLiteral<?>> cycle;
+
+    /**
+     * @param cycle the types on the cycle path, the first one being repeated at the end
+     */
+    public WarmUpCycleException( List<TypeLiteral<?>> cycle )
+    {
+        super( "Warm up dependency cycle: " + toString( cycle ) );
+        this.cycle = Collections.unmodifiableList( cycle );
+    }
+
+    /**
+     * @return the types on the cycle path, each one depending on the next, the first one being repeated at the end
+     */
+    public List<TypeLiteral<?>> getCycle()
+    {
+        return cycle;
+    }
+
+    private static String toString( List<TypeLiteral<?>> cycle )
+    {
+        StringBuilder path = new StringBuilder();
+        for ( TypeLiteral<?> type : cycle )
+        {
+            if ( path.length() > 0 )
+            {
+                path.append( " -> " );
+            }
+            path.append( type );
+        }
+        return path.toString();
+    }
+
+}
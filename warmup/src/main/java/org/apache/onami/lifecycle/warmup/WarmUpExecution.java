@@ -0,0 +1,521 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.TypeLiteral;
+import org.apache.onami.lifecycle.core.StageHandler;
+import org.apache.onami.lifecycle.core.Stageable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single warm up run over a {@link WarmUpGraph}: each type is submitted to the executor
+ * as soon as all the types it depends on are warm. Once {@link #prioritize(Map, int) prioritized},
+ * the ready types are dispatched longest predicted chain first.
+ */
+final class WarmUpExecution
+{
+
+    private static final Comparator<WarmUpTask> LONGEST_FIRST = new Comparator<WarmUpTask>()
+    {
+
+        @Override
+        public int compare( WarmUpTask first, WarmUpTask second )
+        {
+            long difference = second.getPriority() - first.getPriority();
+            return difference > 0 ? 1 : difference < 0 ? -1 : 0;
+        }
+
+    };
+
+    private final WarmUpGraph graph;
+
+    private final ExecutorService executor;
+
+    private final StageHandler stageHandler;
+
+    private final Map<TypeLiteral<?>, WarmUpTask> tasks = new LinkedHashMap<TypeLiteral<?>, WarmUpTask>();
+
+    private final Set<WarmUpTask> running =
+        Collections.newSetFromMap( new ConcurrentHashMap<WarmUpTask, Boolean>() );
+
+    private final CountDownLatch remaining;
+
+    /**
+     * The tasks of the critical types and of the types they depend on.
+     */
+    private final Set<WarmUpTask> critical = new HashSet<WarmUpTask>();
+
+    private final CountDownLatch criticalRemaining;
+
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private volatile Runnable completionListener;
+
+    private volatile boolean cancelled;
+
+    private volatile RejectedExecutionException rejection;
+
+    private volatile long originNanos;
+
+    /**
+     * When the warm up completed or timed out, later progress is not reported.
+     */
+    private volatile long cutoffNanos;
+
+    /**
+     * The ready tasks, by priority, null to submit them in readiness order.
+     */
+    private volatile Queue<WarmUpTask> readyQueue;
+
+    private volatile long predictedNanos = -1;
+
+    /**
+     * Runs the ready task with the highest priority: one is submitted for each ready task.
+     */
+    private final Runnable dispatcher = new Runnable()
+    {
+
+        @Override
+        public void run()
+        {
+            WarmUpTask task = readyQueue.poll();
+            if ( task != null )
+            {
+                task.run();
+            }
+        }
+
+    };
+
+    /**
+     * @param graph        the dependency graph between registered types
+     * @param stageables   the stageables registered per type
+     * @param executor     the executor running the warm ups
+     * @param stageHandler the stage handler passed to {@link org.apache.onami.lifecycle.core.Stager#stage(StageHandler)}
+     */
+    WarmUpExecution( WarmUpGraph graph, Map<TypeLiteral<?>, Set<Stageable>> stageables, ExecutorService executor,
+                     StageHandler stageHandler )
+    {
+        this( graph, stageables, graph.getTypes(), executor, stageHandler );
+    }
+
+    /**
+     * @param graph         the dependency graph between registered types
+     * @param stageables    the stageables registered per type
+     * @param criticalTypes the types to be warm before {@link #executeCritical(long)} returns
+     * @param executor      the executor running the warm ups
+     * @param stageHandler  the stage handler passed to {@link org.apache.onami.lifecycle.core.Stager#stage(StageHandler)}
+     */
+    WarmUpExecution( WarmUpGraph graph, Map<TypeLiteral<?>, Set<Stageable>> stageables,
+                     Set<TypeLiteral<?>> criticalTypes, ExecutorService executor, StageHandler stageHandler )
+    {
+        this.graph = graph;
+        this.executor = executor;
+        this.stageHandler = stageHandler;
+        for ( TypeLiteral<?> type : graph.getTypes() )
+        {
+            tasks.put( type, new WarmUpTask( this, type, stageables.get( type ) ) );
+        }
+        for ( TypeLiteral<?> type : graph.getTypes() )
+        {
+            for ( TypeLiteral<?> dependency : graph.getDependencies( type ) )
+            {
+                tasks.get( dependency ).addDependent( tasks.get( type ) );
+            }
+        }
+        remaining = new CountDownLatch( tasks.size() );
+
+        List<TypeLiteral<?>> toVisit = new ArrayList<TypeLiteral<?>>( criticalTypes );
+        while ( !toVisit.isEmpty() )
+        {
+            TypeLiteral<?> type = toVisit.remove( toVisit.size() - 1 );
+            if ( critical.add( tasks.get( type ) ) )
+            {
+                toVisit.addAll( graph.getDependencies( type ) );
+            }
+        }
+        criticalRemaining = new CountDownLatch( critical.size() );
+    }
+
+    /**
+     * Stages the stageables of the given type repeatedly, see {@link WarmUp#iterations()}.
+     * It has to be set before the warm up is started.
+     *
+     * @param type              a registered type
+     * @param iterations        the number of times each stageable of the type is staged
+     * @param maxIterationNanos the maximum time spent iterating each stageable, 0 for no limit
+     */
+    void setIterations( TypeLiteral<?> type, int iterations, long maxIterationNanos )
+    {
+        tasks.get( type ).setIterations( iterations, maxIterationNanos );
+    }
+
+    /**
+     * Dispatches the ready tasks by decreasing predicted duration of the longest chain of warm ups they start,
+     * and predicts the warm up duration. It has to be called before the warm up is started.
+     *
+     * @param predictions the predicted warm up duration of each registered type, in nanoseconds
+     * @param workers     the number of warm ups the executor runs concurrently, {@link Integer#MAX_VALUE}
+     *                    if unbounded
+     */
+    void prioritize( Map<TypeLiteral<?>, Long> predictions, int workers )
+    {
+        Map<WarmUpTask, Long> durations = new HashMap<WarmUpTask, Long>();
+        for ( WarmUpTask task : tasks.values() )
+        {
+            durations.put( task, predictions.get( task.getTypeLiteral() ) );
+        }
+        Map<WarmUpTask, Long> priorities = new HashMap<WarmUpTask, Long>();
+        for ( WarmUpTask task : tasks.values() )
+        {
+            prioritize( task, durations, priorities );
+        }
+        readyQueue = new PriorityBlockingQueue<WarmUpTask>( Math.max( 1, tasks.size() ), LONGEST_FIRST );
+        predictedNanos = simulate( durations, workers );
+    }
+
+    private long prioritize( WarmUpTask task, Map<WarmUpTask, Long> durations, Map<WarmUpTask, Long> priorities )
+    {
+        Long priority = priorities.get( task );
+        if ( priority == null )
+        {
+            long longestDependent = 0;
+            for ( WarmUpTask dependent : task.getDependents() )
+            {
+                longestDependent = Math.max( longestDependent, prioritize( dependent, durations, priorities ) );
+            }
+            priority = durations.get( task ) + longestDependent;
+            priorities.put( task, priority );
+            task.setPriority( priority );
+        }
+        return priority;
+    }
+
+    /**
+     * @return the predicted warm up duration, scheduling the ready tasks by priority on the given number
+     *         of workers
+     */
+    private long simulate( Map<WarmUpTask, Long> durations, int workers )
+    {
+        Map<WarmUpTask, Integer> pending = new HashMap<WarmUpTask, Integer>();
+        Queue<WarmUpTask> ready = new PriorityQueue<WarmUpTask>( Math.max( 1, tasks.size() ), LONGEST_FIRST );
+        for ( WarmUpTask task : tasks.values() )
+        {
+            int dependencies = graph.getDependencies( task.getTypeLiteral() ).size();
+            pending.put( task, dependencies );
+            if ( dependencies == 0 )
+            {
+                ready.add( task );
+            }
+        }
+        Queue<SimulatedRun> runs = new PriorityQueue<SimulatedRun>();
+        long now = 0;
+        while ( !ready.isEmpty() || !runs.isEmpty() )
+        {
+            while ( runs.size() < workers && !ready.isEmpty() )
+            {
+                WarmUpTask task = ready.poll();
+                runs.add( new SimulatedRun( task, now + durations.get( task ) ) );
+            }
+            SimulatedRun run = runs.poll();
+            now = run.endNanos;
+            for ( WarmUpTask dependent : run.task.getDependents() )
+            {
+                int dependencies = pending.get( dependent ) - 1;
+                pending.put( dependent, dependencies );
+                if ( dependencies == 0 )
+                {
+                    ready.add( dependent );
+                }
+            }
+        }
+        return now;
+    }
+
+    /**
+     * Starts the warm up and waits for it to complete, cancelling it on timeout.
+     *
+     * @param maxMs the maximum time to wait for warm ups to complete
+     * @return true if all the types are warm, false if the warm up timed out
+     * @throws InterruptedException if interrupted while waiting, the warm up is cancelled
+     */
+    boolean execute( long maxMs )
+        throws InterruptedException
+    {
+        start();
+        return await( remaining, maxMs );
+    }
+
+    /**
+     * Starts the warm up and waits for the critical types and their dependencies to be warm, cancelling
+     * the whole warm up on timeout. The other types keep warming up in the background.
+     *
+     * @param maxMs the maximum time to wait for critical warm ups to complete
+     * @return true if the critical types are warm, false if the warm up timed out
+     * @throws InterruptedException if interrupted while waiting, the warm up is cancelled
+     */
+    boolean executeCritical( long maxMs )
+        throws InterruptedException
+    {
+        start();
+        return await( criticalRemaining, maxMs );
+    }
+
+    /**
+     * Sets the listener notified once all the types are warm, or the warm up has been cancelled.
+     * It has to be set before the warm up is started.
+     */
+    void setCompletionListener( Runnable completionListener )
+    {
+        this.completionListener = completionListener;
+    }
+
+    private void start()
+    {
+        originNanos = System.nanoTime();
+        List<WarmUpTask> roots = new ArrayList<WarmUpTask>();
+        for ( WarmUpTask task : tasks.values() )
+        {
+            if ( task.isReady() )
+            {
+                roots.add( task );
+            }
+        }
+        submit( roots );
+    }
+
+    private boolean await( CountDownLatch latch, long maxMs )
+        throws InterruptedException
+    {
+        boolean completed;
+        try
+        {
+            completed = latch.await( maxMs, TimeUnit.MILLISECONDS );
+        }
+        catch ( InterruptedException e )
+        {
+            cutoffNanos = System.nanoTime();
+            cancel();
+            throw e;
+        }
+        cutoffNanos = System.nanoTime();
+        if ( rejection != null )
+        {
+            throw rejection;
+        }
+        if ( !completed )
+        {
+            cancel();
+        }
+        return completed;
+    }
+
+    /**
+     * Reports the warm up progress when it completed or timed out.
+     *
+     * @param timedOut true if the warm up timed out
+     * @return the warm up report
+     */
+    WarmUpReport report( boolean timedOut )
+    {
+        return report( timedOut, cutoffNanos );
+    }
+
+    /**
+     * Reports the warm up progress at the given time.
+     *
+     * @param timedOut    true if the warm up timed out
+     * @param cutoffNanos the {@link System#nanoTime()} later progress is not reported from
+     * @return the warm up report
+     */
+    WarmUpReport report( boolean timedOut, long cutoffNanos )
+    {
+        long elapsedNanos = cutoffNanos - originNanos;
+        Map<TypeLiteral<?>, WarmUpReport.Entry> entries = new LinkedHashMap<TypeLiteral<?>, WarmUpReport.Entry>();
+        for ( WarmUpTask task : tasks.values() )
+        {
+            long start = task.getStartNanos();
+            long end = task.getEndNanos();
+            if ( start - cutoffNanos > 0 )
+            {
+                start = 0;
+            }
+            if ( end - cutoffNanos > 0 )
+            {
+                end = 0;
+            }
+            WarmUpReport.State state;
+            if ( start == 0 )
+            {
+                state = WarmUpReport.State.PENDING;
+            }
+            else if ( end == 0 )
+            {
+                state = WarmUpReport.State.RUNNING;
+            }
+            else
+            {
+                state = WarmUpReport.State.FINISHED;
+            }
+            boolean finished = state == WarmUpReport.State.FINISHED;
+            entries.put( task.getTypeLiteral(), new WarmUpReport.Entry( task.getTypeLiteral(),
+                                                                        graph.getDependencies( task.getTypeLiteral() ),
+                                                                        start == 0 ? -1 : start - originNanos,
+                                                                        end == 0 ? -1 : end - originNanos, state,
+                                                                        finished ? task.getIterationsRun() : 0,
+                                                                        finished ? task.getCompilationMillis() : -1 ) );
+        }
+        return new WarmUpReport( entries, elapsedNanos, timedOut, predictedNanos );
+    }
+
+    /**
+     * Stops submitting tasks and interrupts the running ones.
+     */
+    void cancel()
+    {
+        cancelled = true;
+        for ( WarmUpTask task : running )
+        {
+            task.interrupt();
+        }
+        finish();
+    }
+
+    boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    StageHandler getStageHandler()
+    {
+        return stageHandler;
+    }
+
+    /**
+     * Submits the given ready tasks to the executor.
+     */
+    void submit( List<WarmUpTask> ready )
+    {
+        if ( cancelled || ready.isEmpty() )
+        {
+            return;
+        }
+        Queue<WarmUpTask> queue = readyQueue;
+        running.addAll( ready );
+        if ( queue != null )
+        {
+            // queue them all before dispatching, so that the first dispatch picks the highest priority
+            queue.addAll( ready );
+        }
+        for ( WarmUpTask task : ready )
+        {
+            try
+            {
+                executor.execute( queue != null ? dispatcher : task );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                running.remove( task );
+                rejection = e;
+                cancelled = true;
+                while ( remaining.getCount() > 0 )
+                {
+                    remaining.countDown();
+                }
+                while ( criticalRemaining.getCount() > 0 )
+                {
+                    criticalRemaining.countDown();
+                }
+                finish();
+                return;
+            }
+        }
+    }
+
+    void completed( WarmUpTask task )
+    {
+        running.remove( task );
+        if ( critical.contains( task ) )
+        {
+            criticalRemaining.countDown();
+        }
+        remaining.countDown();
+        if ( remaining.getCount() == 0 )
+        {
+            finish();
+        }
+    }
+
+    /**
+     * Notifies the completion listener, once.
+     */
+    private void finish()
+    {
+        Runnable listener = completionListener;
+        if ( listener != null && finished.compareAndSet( false, true ) )
+        {
+            listener.run();
+        }
+    }
+
+    /**
+     * A warm up run by {@link #simulate(Map, int)}, ordered by end time.
+     */
+    private static final class SimulatedRun
+        implements Comparable<SimulatedRun>
+    {
+
+        final WarmUpTask task;
+
+        final long endNanos;
+
+        SimulatedRun( WarmUpTask task, long endNanos )
+        {
+            this.task = task;
+            this.endNanos = endNanos;
+        }
+
+        @Override
+        public int compareTo( SimulatedRun other )
+        {
+            return endNanos < other.endNanos ? -1 : endNanos > other.endNanos ? 1 : 0;
+        }
+
+    }
+
+}
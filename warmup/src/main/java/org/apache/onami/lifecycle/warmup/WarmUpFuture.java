@@ -0,0 +1,173 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The background part of a warm up started by
+ * {@link WarmUper#stageCritical(org.apache.onami.lifecycle.core.StageHandler)}: it completes once all the
+ * registered types are warm, with the report of the whole warm up.
+ * <p>
+ * Cancelling it interrupts the warm ups still running and skips the ones not started yet.
+ */
+public final class WarmUpFuture
+    implements Future<WarmUpReport>
+{
+
+    private final WarmUpExecution execution;
+
+    private final CountDownLatch done = new CountDownLatch( 1 );
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+    private volatile WarmUpReport report;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param execution the warm up execution, null if nothing had to be warmed up
+     */
+    WarmUpFuture( WarmUpExecution execution )
+    {
+        this.execution = execution;
+    }
+
+    /**
+     * Adds a listener run once the warm up is complete, immediately if it is already complete.
+     * Listeners run on the thread completing the last warm up, so they should be quick.
+     *
+     * @param listener the listener to be run
+     */
+    public void addListener( Runnable listener )
+    {
+        synchronized ( this )
+        {
+            if ( !isDone() )
+            {
+                listeners.add( listener );
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel( boolean mayInterruptIfRunning )
+    {
+        synchronized ( this )
+        {
+            if ( isDone() )
+            {
+                return false;
+            }
+            cancelled = true;
+        }
+        execution.cancel();
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDone()
+    {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WarmUpReport get()
+        throws InterruptedException
+    {
+        done.await();
+        return result();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WarmUpReport get( long timeout, TimeUnit unit )
+        throws InterruptedException, TimeoutException
+    {
+        if ( !done.await( timeout, unit ) )
+        {
+            throw new TimeoutException( "Background warm ups still running" );
+        }
+        return result();
+    }
+
+    /**
+     * Completes the future, running the listeners.
+     *
+     * @param cancelled true if the warm up has been cancelled, i.e. not all the types are warm
+     */
+    void complete( WarmUpReport report, boolean cancelled )
+    {
+        List<Runnable> toRun;
+        synchronized ( this )
+        {
+            this.report = report;
+            this.cancelled |= cancelled;
+            done.countDown();
+            toRun = new ArrayList<Runnable>( listeners );
+            listeners.clear();
+        }
+        for ( Runnable listener : toRun )
+        {
+            listener.run();
+        }
+    }
+
+    private WarmUpReport result()
+    {
+        if ( cancelled )
+        {
+            throw new CancellationException( "Background warm ups cancelled" );
+        }
+        return report;
+    }
+
+}
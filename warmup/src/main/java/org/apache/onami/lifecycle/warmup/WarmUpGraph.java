@@ -0,0 +1,407 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.ConfigurationException;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.Dependency;
+import com.google.inject.spi.InjectionPoint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency graph between the types registered for warm up, built upfront: a type depends on the
+ * registered types it injects, directly or through objects which are not registered, and warms up
+ * after them.
+ * <p>
+ * Dependencies are resolved from the injector bindings when available, see {@link BindingGraph},
+ * otherwise from the {@link InjectionPoint}s of the registered types.
+ * <p>
+ * Cycles are detected upfront and, depending on the {@link CyclePolicy}, either reported or broken by
+ * warming up the types of each cycle one after the other, so a cycle never stalls the warm up.
+ */
+final class WarmUpGraph
+{
+
+    private final Map<TypeLiteral<?>, Set<TypeLiteral<?>>> dependencies;
+
+    private final List<List<TypeLiteral<?>>> cycles = new ArrayList<List<TypeLiteral<?>>>();
+
+    private WarmUpGraph( Map<TypeLiteral<?>, Set<TypeLiteral<?>>> dependencies )
+    {
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Builds the dependency graph between the given registered types.
+     *
+     * @param types the types registered for warm up
+     * @return the dependency graph
+     */
+    static WarmUpGraph build( Set<TypeLiteral<?>> types )
+    {
+        return build( types, null );
+    }
+
+    /**
+     * Builds the dependency graph between the given registered types.
+     *
+     * @param types    the types registered for warm up
+     * @param bindings the bindings of the injector which provided the types, null if unknown
+     * @return the dependency graph
+     */
+    static WarmUpGraph build( Set<TypeLiteral<?>> types, BindingGraph bindings )
+    {
+        return build( types, bindings, CyclePolicy.BREAK );
+    }
+
+    /**
+     * Builds the dependency graph between the given registered types, detecting its cycles.
+     *
+     * @param types    the types registered for warm up
+     * @param bindings the bindings of the injector which provided the types, null if unknown
+     * @param policy   what to do with the cycles
+     * @return the dependency graph, without cycles
+     * @throws WarmUpCycleException if the graph contains a cycle and the policy is {@link CyclePolicy#FAIL}
+     */
+    static WarmUpGraph build( Set<TypeLiteral<?>> types, BindingGraph bindings, CyclePolicy policy )
+    {
+        Map<TypeLiteral<?>, Set<TypeLiteral<?>>> dependencies = new LinkedHashMap<TypeLiteral<?>, Set<TypeLiteral<?>>>();
+        for ( TypeLiteral<?> type : types )
+        {
+            dependencies.put( type, bindings != null ? registeredDependencies( type, types, bindings )
+                            : registeredDependencies( type, types ) );
+        }
+        WarmUpGraph graph = new WarmUpGraph( dependencies );
+        for ( Set<TypeLiteral<?>> component : graph.cyclicComponents() )
+        {
+            List<TypeLiteral<?>> cycle = graph.cyclePath( component );
+            if ( policy == CyclePolicy.FAIL )
+            {
+                throw new WarmUpCycleException( cycle );
+            }
+            graph.cycles.add( cycle );
+            graph.serialize( component );
+        }
+        return graph;
+    }
+
+    /**
+     * @return the registered types
+     */
+    Set<TypeLiteral<?>> getTypes()
+    {
+        return Collections.unmodifiableSet( dependencies.keySet() );
+    }
+
+    /**
+     * @param type a registered type
+     * @return the registered types the given type has to warm up after
+     */
+    Set<TypeLiteral<?>> getDependencies( TypeLiteral<?> type )
+    {
+        return Collections.unmodifiableSet( dependencies.get( type ) );
+    }
+
+    /**
+     * @return a path through each cycle which was broken, the members of a cycle warming up one after the other
+     */
+    List<List<TypeLiteral<?>>> getCycles()
+    {
+        return Collections.unmodifiableList( cycles );
+    }
+
+    /**
+     * @return the number of registered types
+     */
+    int size()
+    {
+        return dependencies.size();
+    }
+
+    private static Set<TypeLiteral<?>> registeredDependencies( TypeLiteral<?> type, Set<TypeLiteral<?>> registered )
+    {
+        Set<TypeLiteral<?>> found = new LinkedHashSet<TypeLiteral<?>>();
+        Set<TypeLiteral<?>> visited = new HashSet<TypeLiteral<?>>();
+        visited.add( type );
+        Deque<TypeLiteral<?>> toVisit = new ArrayDeque<TypeLiteral<?>>( directDependencies( type ) );
+        while ( !toVisit.isEmpty() )
+        {
+            TypeLiteral<?> dependency = toVisit.pop();
+            if ( !visited.add( dependency ) )
+            {
+                continue;
+            }
+            if ( registered.contains( dependency ) )
+            {
+                found.add( dependency );
+            }
+            else
+            {
+                // even if the dependency isn't registered its dependencies may be
+                toVisit.addAll( directDependencies( dependency ) );
+            }
+        }
+        return found;
+    }
+
+    private static Set<TypeLiteral<?>> registeredDependencies( TypeLiteral<?> type, Set<TypeLiteral<?>> registered,
+                                                              BindingGraph bindings )
+    {
+        Set<TypeLiteral<?>> found = new LinkedHashSet<TypeLiteral<?>>();
+        Set<Key<?>> visited = new HashSet<Key<?>>();
+        Deque<Key<?>> toVisit = new ArrayDeque<Key<?>>( bindings.node( Key.get( type ) ).getDependencies() );
+        while ( !toVisit.isEmpty() )
+        {
+            Key<?> key = toVisit.pop();
+            if ( !visited.add( key ) )
+            {
+                continue;
+            }
+            BindingGraph.Node node = bindings.node( key );
+            TypeLiteral<?> constructed = node.getConstructed();
+            if ( constructed != null && registered.contains( constructed ) )
+            {
+                if ( !constructed.equals( type ) )
+                {
+                    found.add( constructed );
+                }
+            }
+            else
+            {
+                // even if the dependency isn't registered its dependencies may be
+                toVisit.addAll( node.getDependencies() );
+            }
+        }
+        return found;
+    }
+
+    private static List<TypeLiteral<?>> directDependencies( TypeLiteral<?> type )
+    {
+        List<TypeLiteral<?>> direct = new ArrayList<TypeLiteral<?>>();
+        addDependencies( direct, getConstructorInjectionPoint( type ) );
+        for ( InjectionPoint injectionPoint : getMethodInjectionPoints( type ) )
+        {
+            addDependencies( direct, injectionPoint );
+        }
+        return direct;
+    }
+
+    private static void addDependencies( List<TypeLiteral<?>> direct, InjectionPoint injectionPoint )
+    {
+        if ( injectionPoint != null )
+        {
+            for ( Dependency<?> dependency : injectionPoint.getDependencies() )
+            {
+                direct.add( dependency.getKey().getTypeLiteral() );
+            }
+        }
+    }
+
+    private static Set<InjectionPoint> getMethodInjectionPoints( TypeLiteral<?> type )
+    {
+        try
+        {
+            return InjectionPoint.forInstanceMethodsAndFields( type );
+        }
+        catch ( ConfigurationException e )
+        {
+            // ignore
+        }
+        return new HashSet<InjectionPoint>();
+    }
+
+    private static InjectionPoint getConstructorInjectionPoint( TypeLiteral<?> type )
+    {
+        try
+        {
+            return InjectionPoint.forConstructorOf( type );
+        }
+        catch ( ConfigurationException e )
+        {
+            // ignore
+        }
+        return null;
+    }
+
+    /**
+     * Finds the strongly connected components of more than one type, each one containing at least one cycle,
+     * using Tarjan's algorithm.
+     */
+    private List<Set<TypeLiteral<?>>> cyclicComponents()
+    {
+        ComponentFinder finder = new ComponentFinder();
+        for ( TypeLiteral<?> type : dependencies.keySet() )
+        {
+            if ( !finder.index.containsKey( type ) )
+            {
+                finder.connect( type );
+            }
+        }
+        return finder.components;
+    }
+
+    /**
+     * @return the shortest cycle path through the first registered type of the component, the first type
+     *         being repeated at the end
+     */
+    private List<TypeLiteral<?>> cyclePath( Set<TypeLiteral<?>> component )
+    {
+        TypeLiteral<?> start = component.iterator().next();
+        Map<TypeLiteral<?>, TypeLiteral<?>> reachedFrom = new HashMap<TypeLiteral<?>, TypeLiteral<?>>();
+        Deque<TypeLiteral<?>> toVisit = new ArrayDeque<TypeLiteral<?>>();
+        toVisit.add( start );
+        while ( !toVisit.isEmpty() && !reachedFrom.containsKey( start ) )
+        {
+            TypeLiteral<?> type = toVisit.poll();
+            for ( TypeLiteral<?> dependency : dependencies.get( type ) )
+            {
+                if ( component.contains( dependency ) && !reachedFrom.containsKey( dependency ) )
+                {
+                    reachedFrom.put( dependency, type );
+                    toVisit.add( dependency );
+                }
+            }
+        }
+        LinkedList<TypeLiteral<?>> path = new LinkedList<TypeLiteral<?>>();
+        path.add( start );
+        TypeLiteral<?> type = reachedFrom.get( start );
+        while ( !type.equals( start ) )
+        {
+            path.addFirst( type );
+            type = reachedFrom.get( type );
+        }
+        path.addFirst( start );
+        return path;
+    }
+
+    /**
+     * Replaces the dependencies between the types of the component by a chain, so that they warm up one after
+     * the other, in an order following their dependencies except the ones closing cycles.
+     */
+    private void serialize( Set<TypeLiteral<?>> component )
+    {
+        List<TypeLiteral<?>> order = new ArrayList<TypeLiteral<?>>();
+        Set<TypeLiteral<?>> visited = new HashSet<TypeLiteral<?>>();
+        for ( TypeLiteral<?> type : component )
+        {
+            postOrder( type, component, visited, order );
+        }
+        TypeLiteral<?> previous = null;
+        for ( TypeLiteral<?> type : order )
+        {
+            Set<TypeLiteral<?>> typeDependencies = dependencies.get( type );
+            typeDependencies.removeAll( component );
+            if ( previous != null )
+            {
+                typeDependencies.add( previous );
+            }
+            previous = type;
+        }
+    }
+
+    private void postOrder( TypeLiteral<?> type, Set<TypeLiteral<?>> component, Set<TypeLiteral<?>> visited,
+                            List<TypeLiteral<?>> order )
+    {
+        if ( !component.contains( type ) || !visited.add( type ) )
+        {
+            return;
+        }
+        for ( TypeLiteral<?> dependency : dependencies.get( type ) )
+        {
+            postOrder( dependency, component, visited, order );
+        }
+        order.add( type );
+    }
+
+    private final class ComponentFinder
+    {
+
+        final Map<TypeLiteral<?>, Integer> index = new HashMap<TypeLiteral<?>, Integer>();
+
+        final Map<TypeLiteral<?>, Integer> lowLink = new HashMap<TypeLiteral<?>, Integer>();
+
+        final Deque<TypeLiteral<?>> stack = new ArrayDeque<TypeLiteral<?>>();
+
+        final Set<TypeLiteral<?>> onStack = new HashSet<TypeLiteral<?>>();
+
+        final List<Set<TypeLiteral<?>>> components = new ArrayList<Set<TypeLiteral<?>>>();
+
+        void connect( TypeLiteral<?> type )
+        {
+            int typeIndex = index.size();
+            index.put( type, typeIndex );
+            lowLink.put( type, typeIndex );
+            stack.push( type );
+            onStack.add( type );
+            for ( TypeLiteral<?> dependency : dependencies.get( type ) )
+            {
+                if ( !index.containsKey( dependency ) )
+                {
+                    connect( dependency );
+                    lowLink.put( type, Math.min( lowLink.get( type ), lowLink.get( dependency ) ) );
+                }
+                else if ( onStack.contains( dependency ) )
+                {
+                    lowLink.put( type, Math.min( lowLink.get( type ), index.get( dependency ) ) );
+                }
+            }
+            if ( lowLink.get( type ) == typeIndex )
+            {
+                Set<TypeLiteral<?>> members = new HashSet<TypeLiteral<?>>();
+                TypeLiteral<?> member;
+                do
+                {
+                    member = stack.pop();
+                    onStack.remove( member );
+                    members.add( member );
+                }
+                while ( !member.equals( type ) );
+                if ( members.size() > 1 )
+                {
+                    // keep the registration order, so that cycle paths and warm up orders are stable
+                    Set<TypeLiteral<?>> component = new LinkedHashSet<TypeLiteral<?>>();
+                    for ( TypeLiteral<?> registered : dependencies.keySet() )
+                    {
+                        if ( members.contains( registered ) )
+                        {
+                            component.add( registered );
+                        }
+                    }
+                    components.add( component );
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.TypeLiteral;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Warm up duration of each type measured by the previous runs, persisted to a properties file keyed by type,
+ * so that the next run can schedule the longest warm ups first.
+ */
+final class WarmUpHistory
+{
+
+    private final File file;
+
+    WarmUpHistory( File file )
+    {
+        this.file = file;
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Predicts the warm up duration of the given types: the last measured one, or the average of the known
+     * types for the types never warmed up.
+     *
+     * @param types the types to warm up
+     * @return the predicted duration of each type, in nanoseconds, null if no type is known
+     * @throws IOException if the history can't be read
+     */
+    synchronized Map<TypeLiteral<?>, Long> predict( Set<TypeLiteral<?>> types )
+        throws IOException
+    {
+        Properties durations = load();
+        Map<TypeLiteral<?>, Long> predictions = new HashMap<TypeLiteral<?>, Long>();
+        long known = 0;
+        for ( TypeLiteral<?> type : types )
+        {
+            Long duration = parse( durations.getProperty( type.toString() ) );
+            if ( duration != null )
+            {
+                predictions.put( type, duration );
+                known += duration;
+            }
+        }
+        if ( predictions.isEmpty() )
+        {
+            return null;
+        }
+        long average = known / predictions.size();
+        for ( TypeLiteral<?> type : types )
+        {
+            if ( !predictions.containsKey( type ) )
+            {
+                predictions.put( type, average );
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * Records the duration of the types warm in the given report, keeping the other ones.
+     *
+     * @param report the report of the warm up
+     * @throws IOException if the history can't be written
+     */
+    synchronized void record( WarmUpReport report )
+        throws IOException
+    {
+        Properties durations = load();
+        for ( WarmUpReport.Entry entry : report.getEntries().values() )
+        {
+            if ( entry.getState() == WarmUpReport.State.FINISHED )
+            {
+                durations.setProperty( entry.getType().toString(), String.valueOf( entry.getDurationNanos() ) );
+            }
+        }
+        OutputStream output = new FileOutputStream( file );
+        try
+        {
+            durations.store( output, "Warm up durations in nanoseconds, written by " + WarmUper.class.getName() );
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    private Properties load()
+        throws IOException
+    {
+        Properties durations = new Properties();
+        if ( file.isFile() )
+        {
+            InputStream input = new FileInputStream( file );
+            try
+            {
+                durations.load( input );
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        return durations;
+    }
+
+    private static Long parse( String duration )
+    {
+        if ( duration == null )
+        {
+            return null;
+        }
+        try
+        {
+            return Long.valueOf( duration );
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
+}
@@ -33,12 +33,26 @@ public class WarmUpModule
 
     private static final long DEFAULT_WAIT_MS = TimeUnit.DAYS.toMillis( Integer.MAX_VALUE );    // essentially forever
 
-    private final WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, DEFAULT_WAIT_MS );
+    private final WarmUper<WarmUp> stager;
+
+    public WarmUpModule()
+    {
+        this( new WarmUper<WarmUp>( WarmUp.class, DEFAULT_WAIT_MS ) );
+    }
+
+    /**
+     * @param stager the configured stager performing the warm ups
+     */
+    public WarmUpModule( WarmUper<WarmUp> stager )
+    {
+        this.stager = stager;
+    }
 
     @Override
     protected void configureBindings()
     {
         bindStager( stager ).mappingWith( stager );
+        requestInjection( stager );
     }
 
     public Stager<WarmUp> getStager()
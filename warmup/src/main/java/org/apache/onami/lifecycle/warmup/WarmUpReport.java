@@ -0,0 +1,428 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.TypeLiteral;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a warm up performed by {@link WarmUper}: when each registered type started and ended
+ * warming up, the dependencies between them, the critical path and the types left unfinished
+ * when the warm up timed out, the predicted duration, how many times each warm up was iterated and whether the JIT compiler activity
+ * settled afterwards.
+ * <p>
+ * Timestamps are nanoseconds elapsed since the warm up started.
+ */
+public final class WarmUpReport
+{
+
+    private final Map<TypeLiteral<?>, Entry> entries;
+
+    private final List<Entry> criticalPath;
+
+    private final long elapsedNanos;
+
+    private final boolean timedOut;
+
+    private final long predictedNanos;
+
+    private final long jitSettleNanos;
+
+    private final boolean jitSettled;
+
+    WarmUpReport( Map<TypeLiteral<?>, Entry> entries, long elapsedNanos, boolean timedOut )
+    {
+        this( entries, elapsedNanos, timedOut, -1 );
+    }
+
+    WarmUpReport( Map<TypeLiteral<?>, Entry> entries, long elapsedNanos, boolean timedOut, long predictedNanos )
+    {
+        this( entries, elapsedNanos, timedOut, predictedNanos, -1, false );
+    }
+
+    private WarmUpReport( Map<TypeLiteral<?>, Entry> entries, long elapsedNanos, boolean timedOut,
+                          long predictedNanos, long jitSettleNanos, boolean jitSettled )
+    {
+        this.entries = Collections.unmodifiableMap( entries );
+        this.elapsedNanos = elapsedNanos;
+        this.timedOut = timedOut;
+        this.predictedNanos = predictedNanos;
+        this.jitSettleNanos = jitSettleNanos;
+        this.jitSettled = jitSettled;
+        this.criticalPath = Collections.unmodifiableList( criticalPath( entries, elapsedNanos ) );
+    }
+
+    /**
+     * @param settleNanos the time spent waiting for the JIT compiler activity to settle
+     * @param settled     true if it settled
+     * @return a copy of this report with the outcome of the wait for the JIT compiler activity to settle
+     */
+    WarmUpReport withJitSettling( long settleNanos, boolean settled )
+    {
+        return new WarmUpReport( entries, elapsedNanos, timedOut, predictedNanos, settleNanos, settled );
+    }
+
+    /**
+     * @return the warm up of each registered type
+     */
+    public Map<TypeLiteral<?>, Entry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Returns the chain of dependencies that determined the warm up duration: it ends with the type which
+     * finished last, preceded by the dependency which finished last among the ones of the next type, and so on.
+     *
+     * @return the critical path, from the first type warmed up to the last one
+     */
+    public List<Entry> getCriticalPath()
+    {
+        return criticalPath;
+    }
+
+    /**
+     * @return the types which were not warm when the warm up completed or timed out
+     */
+    public List<TypeLiteral<?>> getUnfinished()
+    {
+        List<TypeLiteral<?>> unfinished = new ArrayList<TypeLiteral<?>>();
+        for ( Entry entry : entries.values() )
+        {
+            if ( entry.getState() != State.FINISHED )
+            {
+                unfinished.add( entry.getType() );
+            }
+        }
+        return unfinished;
+    }
+
+    /**
+     * @return the warm up duration, in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the warm up duration predicted from the durations of the previous runs, in nanoseconds,
+     *         -1 if there was no prediction
+     * @see WarmUper#setDurationHistory(java.io.File)
+     * @since 0.2.0
+     */
+    public long getPredictedNanos()
+    {
+        return predictedNanos;
+    }
+
+    /**
+     * @return the sum of the durations of the types which were warm, that is the time a sequential warm up
+     *         would have taken, in nanoseconds
+     * @since 0.2.0
+     */
+    public long getTotalNanos()
+    {
+        long total = 0;
+        for ( Entry entry : entries.values() )
+        {
+            if ( entry.getState() == State.FINISHED )
+            {
+                total += entry.getDurationNanos();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return true if the warm up timed out
+     */
+    public boolean isTimedOut()
+    {
+        return timedOut;
+    }
+
+    /**
+     * @return the time spent after the warm ups waiting for the JIT compiler activity to settle, in nanoseconds,
+     *         -1 if it was not waited for
+     * @see WarmUper#setJitSettling(long, long, java.util.concurrent.TimeUnit)
+     * @since 0.2.0
+     */
+    public long getJitSettleNanos()
+    {
+        return jitSettleNanos;
+    }
+
+    /**
+     * @return true if the JIT compiler activity settled after the warm ups
+     * @since 0.2.0
+     */
+    public boolean isJitSettled()
+    {
+        return jitSettled;
+    }
+
+    /**
+     * Returns a human readable summary of the warm up: overall outcome, critical path and unfinished types.
+     *
+     * @return a human readable summary of the warm up
+     */
+    public String getSummary()
+    {
+        StringBuilder summary = new StringBuilder();
+        summary.append( "Warm up of " ).append( entries.size() ).append( " types " )
+            .append( timedOut ? "timed out after " : "completed in " ).append( millis( elapsedNanos ) )
+            .append( " ms" );
+        if ( predictedNanos >= 0 )
+        {
+            summary.append( " (predicted " ).append( millis( predictedNanos ) ).append( " ms)" );
+        }
+        summary.append( ", " ).append( millis( getTotalNanos() ) ).append( " ms sequentially" );
+        if ( jitSettleNanos >= 0 )
+        {
+            summary.append( ", JIT activity " ).append( jitSettled ? "settled after " : "still running after " )
+                .append( millis( jitSettleNanos ) ).append( " ms" );
+        }
+        summary.append( "\nCritical path:" );
+        for ( Entry entry : criticalPath )
+        {
+            summary.append( "\n  " ).append( entry );
+        }
+        List<TypeLiteral<?>> unfinished = getUnfinished();
+        if ( !unfinished.isEmpty() )
+        {
+            summary.append( "\nUnfinished:" );
+            for ( TypeLiteral<?> type : unfinished )
+            {
+                summary.append( "\n  " ).append( entries.get( type ) );
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return getSummary();
+    }
+
+    private static List<Entry> criticalPath( Map<TypeLiteral<?>, Entry> entries, long elapsedNanos )
+    {
+        LinkedList<Entry> path = new LinkedList<Entry>();
+        Entry current = latest( entries.values(), elapsedNanos );
+        while ( current != null )
+        {
+            path.addFirst( current );
+            List<Entry> dependencies = new ArrayList<Entry>();
+            for ( TypeLiteral<?> dependency : current.getDependencies() )
+            {
+                dependencies.add( entries.get( dependency ) );
+            }
+            current = latest( dependencies, elapsedNanos );
+        }
+        return path;
+    }
+
+    /**
+     * @return the started entry ending last, unfinished entries ending when the warm up did
+     */
+    private static Entry latest( Iterable<Entry> candidates, long elapsedNanos )
+    {
+        Entry latest = null;
+        long latestEnd = -1;
+        for ( Entry candidate : candidates )
+        {
+            if ( candidate.getState() == State.PENDING )
+            {
+                continue;
+            }
+            long end = candidate.getState() == State.FINISHED ? candidate.getEndNanos() : elapsedNanos;
+            if ( end > latestEnd )
+            {
+                latest = candidate;
+                latestEnd = end;
+            }
+        }
+        return latest;
+    }
+
+    private static long millis( long nanos )
+    {
+        return TimeUnit.NANOSECONDS.toMillis( nanos );
+    }
+
+    /**
+     * Warm up state of a registered type.
+     */
+    public static enum State
+    {
+        /**
+         * Waiting for its dependencies to be warm.
+         */
+        PENDING,
+
+        /**
+         * Warming up.
+         */
+        RUNNING,
+
+        /**
+         * Warm.
+         */
+        FINISHED
+    }
+
+    /**
+     * Warm up of a registered type.
+     */
+    public static final class Entry
+    {
+
+        private final TypeLiteral<?> type;
+
+        private final Set<TypeLiteral<?>> dependencies;
+
+        private final long startNanos;
+
+        private final long endNanos;
+
+        private final State state;
+
+        private final int iterations;
+
+        private final long compilationMillis;
+
+        Entry( TypeLiteral<?> type, Set<TypeLiteral<?>> dependencies, long startNanos, long endNanos, State state,
+               int iterations, long compilationMillis )
+        {
+            this.type = type;
+            this.dependencies = dependencies;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.state = state;
+            this.iterations = iterations;
+            this.compilationMillis = compilationMillis;
+        }
+
+        /**
+         * @return the registered type
+         */
+        public TypeLiteral<?> getType()
+        {
+            return type;
+        }
+
+        /**
+         * @return the registered types this one warmed up after, discovered from its injection points
+         */
+        public Set<TypeLiteral<?>> getDependencies()
+        {
+            return dependencies;
+        }
+
+        /**
+         * @return when the type started warming up, -1 if it did not
+         */
+        public long getStartNanos()
+        {
+            return startNanos;
+        }
+
+        /**
+         * @return when the type was warm, -1 if it was not
+         */
+        public long getEndNanos()
+        {
+            return endNanos;
+        }
+
+        /**
+         * @return the warm up duration, -1 if the type was not warm
+         */
+        public long getDurationNanos()
+        {
+            return state == State.FINISHED ? endNanos - startNanos : -1;
+        }
+
+        /**
+         * @return the warm up state
+         */
+        public State getState()
+        {
+            return state;
+        }
+
+        /**
+         * @return the largest number of times a warm up method of the type was invoked, 0 if the type was not warm
+         * @see WarmUp#iterations()
+         * @since 0.2.0
+         */
+        public int getIterations()
+        {
+            return iterations;
+        }
+
+        /**
+         * Returns the JIT compilation time accumulated while the type warmed up. The compilation time is measured
+         * for the whole JVM, so it includes the compilations triggered by the concurrent warm ups.
+         *
+         * @return the JIT compilation time, in milliseconds, -1 if the type was not warm or the JVM does not
+         *         monitor compilation time
+         * @since 0.2.0
+         */
+        public long getCompilationMillis()
+        {
+            return compilationMillis;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            switch ( state )
+            {
+                case FINISHED:
+                    return type + " " + millis( startNanos ) + "-" + millis( endNanos ) + " ms ("
+                        + millis( getDurationNanos() ) + " ms"
+                        + ( iterations > 1 ? ", " + iterations + " iterations" : "" )
+                        + ( compilationMillis >= 0 ? ", " + compilationMillis + " ms JIT" : "" ) + ")";
+                case RUNNING:
+                    return type + " running since " + millis( startNanos ) + " ms";
+                default:
+                    return type + " pending, waiting for " + dependencies;
+            }
+        }
+
+    }
+
+}
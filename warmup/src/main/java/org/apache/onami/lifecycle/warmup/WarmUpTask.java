@@ -19,168 +19,312 @@ package org.apache.onami.lifecycle.warmup;
  * under the License.
  */
 
-import com.google.inject.ConfigurationException;
 import com.google.inject.TypeLiteral;
-import com.google.inject.spi.Dependency;
-import com.google.inject.spi.InjectionPoint;
-import jsr166y.RecursiveAction;
-import org.apache.onami.lifecycle.core.StageHandler;
+import jsr166y.ForkJoinPool;
+import jsr166y.ForkJoinWorkerThread;
+import org.apache.onami.lifecycle.core.AbstractBasicStageable;
 import org.apache.onami.lifecycle.core.Stageable;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Fork-join task that performs the warm ups
+ * Warms up the stageables registered for a type, once all the types it depends on are warm,
+ * then releases the types depending on it.
  */
 class WarmUpTask
-    extends RecursiveAction
+    implements Runnable
 {
-    private final StageHandler stageHandler;
+
+    private static final Logger LOGGER = Logger.getLogger( WarmUpTask.class.getName() );
+
+    private final WarmUpExecution execution;
 
     private final TypeLiteral<?> typeLiteral;
 
-    private final Map<TypeLiteral<?>, Set<Stageable>> reverseLookup;
+    private final Set<Stageable> stageables;
 
-    private final ConcurrentMap<TypeLiteral<?>, WarmUpTask> inProgress;
+    private final List<WarmUpTask> dependents = new ArrayList<WarmUpTask>();
 
-    static final TypeLiteral<?> ROOT = new TypeLiteral<Object>(){};
+    private final AtomicInteger pendingDependencies = new AtomicInteger();
 
     /**
-     * @param stageHandler the stage handler passed to {@link org.apache.onami.lifecycle.core.Stager#stage(org.apache.onami.lifecycle.core.StageHandler)}
+     * The thread currently warming up the stageables, guarded by {@code this}.
+     */
+    private Thread runner;
+
+    private volatile long startNanos;
+
+    private volatile long endNanos;
+
+    private volatile int iterations = 1;
+
+    private volatile long maxIterationNanos;
+
+    private volatile int iterationsRun;
+
+    private volatile long compilationMillis = -1;
+
+    /**
+     * The predicted duration of the longest chain of warm ups starting with this one, see
+     * {@link WarmUpExecution#prioritize(java.util.Map, int)}.
+     */
+    private volatile long priority;
+
+    /**
+     * @param execution   the execution the task is part of
      * @param typeLiteral the type associated with the object being warmed up
-     * @param reverseLookup the full list of types-to-stagers that were registered
-     * @param inProgress which tasks are already warming up (to avoid duplicates)
+     * @param stageables  the stageables registered for the type
      */
-    WarmUpTask( StageHandler stageHandler, TypeLiteral<?> typeLiteral,
-                Map<TypeLiteral<?>, Set<Stageable>> reverseLookup, ConcurrentMap<TypeLiteral<?>, WarmUpTask> inProgress )
+    WarmUpTask( WarmUpExecution execution, TypeLiteral<?> typeLiteral, Set<Stageable> stageables )
     {
-        this.stageHandler = stageHandler;
+        this.execution = execution;
         this.typeLiteral = typeLiteral;
-        this.reverseLookup = reverseLookup;
-        this.inProgress = inProgress;
+        this.stageables = stageables;
     }
 
-    @Override
-    protected void compute()
+    /**
+     * Invokes each stageable repeatedly, to prime the JIT compiler.
+     *
+     * @param iterations        the number of times each stageable is staged
+     * @param maxIterationNanos the maximum time spent iterating each stageable, 0 for no limit
+     */
+    void setIterations( int iterations, long maxIterationNanos )
     {
-        List<WarmUpTask> tasksToJoin = new ArrayList<WarmUpTask>();
-        if ( typeLiteral == ROOT )
-        {
-            // this is the root task - just start all the known tasks
-            computeRoot( tasksToJoin );
-        }
-        else
-        {
-            internalCompute( tasksToJoin );
-        }
+        this.iterations = iterations;
+        this.maxIterationNanos = maxIterationNanos;
+    }
 
-        // wait for dependent tasks to finish
-        for ( WarmUpTask task : tasksToJoin )
-        {
-            task.join();
-        }
+    /**
+     * Makes the given task wait for this one to complete.
+     */
+    void addDependent( WarmUpTask dependent )
+    {
+        dependents.add( dependent );
+        dependent.pendingDependencies.incrementAndGet();
+    }
 
-        // finally do the execution
+    /**
+     * @return true if the task has no dependency left to wait for
+     */
+    boolean isReady()
+    {
+        return pendingDependencies.get() == 0;
+    }
+
+    List<WarmUpTask> getDependents()
+    {
+        return dependents;
+    }
+
+    long getPriority()
+    {
+        return priority;
+    }
+
+    void setPriority( long priority )
+    {
+        this.priority = priority;
+    }
+
+    TypeLiteral<?> getTypeLiteral()
+    {
+        return typeLiteral;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} the warm up started at, 0 if not started
+     */
+    long getStartNanos()
+    {
+        return startNanos;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} the warm up ended at, 0 if not ended
+     */
+    long getEndNanos()
+    {
+        return endNanos;
+    }
+
+    /**
+     * @return the largest number of times a stageable was staged
+     */
+    int getIterationsRun()
+    {
+        return iterationsRun;
+    }
 
-        Set<Stageable> stageables = reverseLookup.get( typeLiteral );
-        if ( stageables != null )
+    /**
+     * @return the JIT compilation time, in milliseconds, accumulated by the whole JVM while warming up,
+     *         -1 if not ended or not monitored
+     */
+    long getCompilationMillis()
+    {
+        return compilationMillis;
+    }
+
+    @Override
+    public void run()
+    {
+        synchronized ( this )
+        {
+            runner = Thread.currentThread();
+        }
+        startNanos = System.nanoTime();
+        long compilationStart = JitMonitor.compilationMillis();
+        try
         {
             for ( Stageable stageable : stageables )
             {
-                if ( Thread.currentThread().isInterrupted() )
+                if ( execution.isCancelled() || Thread.currentThread().isInterrupted() )
                 {
                     // Warmup is taking too long - thread was interrupted.
                     // Skip other stageables.
                     break;
                 }
-                stageable.stage( stageHandler );
+                try
+                {
+                    stage( stageable );
+                }
+                catch ( RuntimeException e )
+                {
+                    failed( stageable, e );
+                }
+                catch ( Error e )
+                {
+                    failed( stageable, e );
+                }
             }
         }
-    }
-
-    private void computeRoot( List<WarmUpTask> tasksToJoin )
-    {
-        for ( TypeLiteral<?> typeLiteral : reverseLookup.keySet() )
+        finally
         {
-            WarmUpTask warmUpTask = new WarmUpTask( stageHandler, typeLiteral, reverseLookup, inProgress );
-            startTask( tasksToJoin, warmUpTask );
+            synchronized ( this )
+            {
+                runner = null;
+                if ( execution.isCancelled() )
+                {
+                    // don't leak the cancellation interrupt to the pool thread
+                    Thread.interrupted();
+                }
+            }
+
+            // whatever happened, the dependents must not wait forever
+            if ( compilationStart >= 0 )
+            {
+                compilationMillis = JitMonitor.compilationMillis() - compilationStart;
+            }
+            endNanos = System.nanoTime();
+            execution.completed( this );
+            List<WarmUpTask> ready = new ArrayList<WarmUpTask>();
+            for ( WarmUpTask dependent : dependents )
+            {
+                if ( dependent.pendingDependencies.decrementAndGet() == 0 )
+                {
+                    ready.add( dependent );
+                }
+            }
+            execution.submit( ready );
         }
     }
 
-    private void internalCompute( List<WarmUpTask> tasksToJoin )
+    /**
+     * Reports a stageable which threw, or whose stage handler threw, while warming up.
+     */
+    private void failed( Stageable stageable, Throwable failure )
     {
-        List<WarmUpTask> childTasks = new ArrayList<WarmUpTask>();
-        addDependency( childTasks, getConstructorInjectionPoint( typeLiteral ) );
-        for ( InjectionPoint injectionPoint : getMethodInjectionPoints( typeLiteral ) )
+        try
         {
-            addDependency( childTasks, injectionPoint );
+            execution.getStageHandler().onError( AbstractBasicStageable.injecteeOf( stageable ), failure );
         }
-
-        for ( WarmUpTask childTask : childTasks )
+        catch ( RuntimeException e )
         {
-            startTask( tasksToJoin, childTask );
+            LOGGER.log( Level.WARNING, "Stage handler failed reporting the warm up failure of " + stageable, failure );
         }
     }
 
-    private void startTask( List<WarmUpTask> tasksToJoin, WarmUpTask childTask )
+    /**
+     * Interrupts the thread warming up the stageables, if any.
+     */
+    synchronized void interrupt()
     {
-        WarmUpTask existingTask = inProgress.putIfAbsent( childTask.typeLiteral, childTask );
-        if ( existingTask == null )
+        if ( runner != null )
         {
-            childTask.fork();
-            tasksToJoin.add( childTask );
-        }
-        else
-        {
-            tasksToJoin.add( existingTask );
+            runner.interrupt();
         }
     }
 
-    private void addDependency( List<WarmUpTask> childTasks, InjectionPoint injectionPoint )
+    private void stage( final Stageable stageable )
     {
-        if ( injectionPoint != null )
+        if ( !( Thread.currentThread() instanceof ForkJoinWorkerThread ) )
         {
-            List<Dependency<?>> dependencies = injectionPoint.getDependencies();
-            for ( Dependency<?> dependency : dependencies )
-            {
-                // create a task for any dependencies. Note: even if the dependency isn't
-                // a registered stager it must be created as a task as its dependencies
-                // may be stagers
-                TypeLiteral<?> dependencyTypeLiteral = dependency.getKey().getTypeLiteral();
-                childTasks.add(
-                    new WarmUpTask( stageHandler, dependencyTypeLiteral, reverseLookup, inProgress ) );
-            }
+            iterate( stageable );
+            return;
         }
-    }
 
-    private Set<InjectionPoint> getMethodInjectionPoints( TypeLiteral<?> type )
-    {
+        // warm ups usually block on I/O, let the pool compensate for the blocked worker
         try
         {
-            return InjectionPoint.forInstanceMethodsAndFields( type );
+            ForkJoinPool.managedBlock( new ForkJoinPool.ManagedBlocker()
+            {
+
+                private boolean staged;
+
+                @Override
+                public boolean block()
+                {
+                    iterate( stageable );
+                    staged = true;
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable()
+                {
+                    return staged;
+                }
+
+            } );
         }
-        catch ( ConfigurationException e )
+        catch ( InterruptedException e )
         {
-            // ignore
+            Thread.currentThread().interrupt();
         }
-        return new HashSet<InjectionPoint>();
     }
 
-    private InjectionPoint getConstructorInjectionPoint( TypeLiteral<?> type )
+    private void iterate( Stageable stageable )
     {
-        try
+        if ( iterations <= 1 )
         {
-            return InjectionPoint.forConstructorOf( type );
+            stageable.stage( execution.getStageHandler() );
+            iterationsRun = Math.max( iterationsRun, 1 );
+            return;
         }
-        catch ( ConfigurationException e )
+
+        IterationStageHandler iterationHandler = new IterationStageHandler( execution.getStageHandler() );
+        long iterationStart = System.nanoTime();
+        int run = 0;
+        do
         {
-            // ignore
+            stageable.stage( iterationHandler );
+            run++;
         }
-        return null;
+        while ( run < iterations && !iterationHandler.isFailed() && !execution.isCancelled()
+            && !Thread.currentThread().isInterrupted()
+            && ( maxIterationNanos == 0 || System.nanoTime() - iterationStart < maxIterationNanos ) );
+        iterationsRun = Math.max( iterationsRun, run );
+        iterationHandler.report();
     }
+
+    @Override
+    public String toString()
+    {
+        return typeLiteral.toString();
+    }
+
 }
@@ -0,0 +1,53 @@
+package org.apache.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Thrown, wrapped in a {@link RuntimeException}, when {@link WarmUper} times out
+ * waiting for the warm ups to complete.
+ */
+public final class WarmUpTimeoutException
+    extends TimeoutException
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient WarmUpReport report;
+
+    /**
+     * @param report the report of the timed out warm up
+     */
+    public WarmUpTimeoutException( WarmUpReport report )
+    {
+        super( "Warm up stager timed out\n" + report.getSummary() );
+        this.report = report;
+    }
+
+    /**
+     * @return the report of the timed out warm up, listing the unfinished types
+     */
+    public WarmUpReport getReport()
+    {
+        return report;
+    }
+
+}
@@ -19,6 +19,8 @@ package org.apache.onami.lifecycle.warmup;
  * under the License.
  */
 
+import com.google.inject.Inject;
+import com.google.inject.Injector;
 import com.google.inject.TypeLiteral;
 import jsr166y.ForkJoinPool;
 import org.apache.onami.lifecycle.core.NoOpStageHandler;
@@ -27,23 +29,56 @@ import org.apache.onami.lifecycle.core.Stageable;
 import org.apache.onami.lifecycle.core.StageableTypeMapper;
 import org.apache.onami.lifecycle.core.Stager;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A {@link Stager} that handles the warm up process. For Warm Up, you
  * <strong>must</strong> use WarmUper.
+ * <p>
+ * The dependency graph between the registered types is computed upfront from the injector bindings,
+ * see {@link #setInjector(Injector)}, then each type is submitted for warm up as soon as all its
+ * dependencies are warm, longest first when the {@link #setDurationHistory(File) durations} of the previous
+ * warm ups are known. The graph is reused as long as the same types are registered. Dependency cycles are
+ * handled upfront according to the {@link #setCyclePolicy(CyclePolicy) cycle policy}. Warm ups run on:
+ * <ul>
+ * <li>the executor set through {@link #setExecutorService(ExecutorService)}, which is shared and
+ * never shut down by the stager;</li>
+ * <li>otherwise, a virtual thread per type when {@link #setVirtualThreads(boolean) enabled}
+ * and supported by the running JVM;</li>
+ * <li>otherwise, a {@link ForkJoinPool} created for the warm up, sized to the parallelism
+ * and to the number of registered types.</li>
+ * </ul>
+ * Warm ups running on {@link ForkJoinPool} workers are wrapped in a
+ * {@link ForkJoinPool.ManagedBlocker}, so the pool compensates for workers blocked on I/O.
+ * <p>
+ * {@link #stage(StageHandler)} returns once all the types are warm, and optionally once the JIT compiler
+ * activity has settled, see {@link #setJitSettling(long, long, TimeUnit)}; {@link #stageCritical(StageHandler)}
+ * returns once the critical types are warm. Once warm, {@link #stage(StageHandler)} can also write the class list
+ * of a class data sharing archive, see {@link #setClassListTraining(ClassListTraining)}.
  */
 public class WarmUper<A extends Annotation>
     implements Stager<A>, StageableTypeMapper
 {
+    private static final Logger LOGGER = Logger.getLogger( WarmUper.class.getName() );
+
     private final ConcurrentMap<TypeLiteral<?>, Set<Stageable>> reverseLookup =
         new ConcurrentHashMap<TypeLiteral<?>, Set<Stageable>>();
 
@@ -51,11 +86,36 @@ public class WarmUper<A extends Annotation>
 
     private volatile long maxMs;
 
+    private volatile ExecutorService executorService;
+
+    private volatile int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private volatile boolean virtualThreads;
+
+    private volatile WarmUpReport lastReport;
+
+    private volatile BindingGraph bindings;
+
+    private volatile CyclePolicy cyclePolicy = CyclePolicy.BREAK;
+
+    private volatile long jitQuietNanos;
+
+    private volatile long jitSettleMaxNanos;
+
+    private volatile ClassListTraining classListTraining;
+
+    private volatile WarmUpHistory history;
+
+    /**
+     * The graph built by the last warm up, reused while the same types are registered again.
+     */
+    private volatile WarmUpGraph lastGraph;
+
     /**
      * @param stage the annotation to mark this stage
      * @param maxMs when {@link #stage()} is called, this is the maximum time
      *              to wait for warmups to complete. If time expires, a
-     *              {@link TimeoutException} (wrapped in a {@link RuntimeException}
+     *              {@link WarmUpTimeoutException} (wrapped in a {@link RuntimeException}
      *              is thrown.
      */
     public WarmUper( Class<A> stage, long maxMs )
@@ -67,8 +127,8 @@ public class WarmUper<A extends Annotation>
     /**
      * When the warm up is staged, it will wait until this maximum time for warm ups to finish.
      * The default is to wait forever. If time expires, a
-     * {@link TimeoutException} (wrapped in a {@link RuntimeException}
-     * is thrown.
+     * {@link WarmUpTimeoutException} (wrapped in a {@link RuntimeException}
+     * is thrown, reporting the unfinished types.
      *
      * @param maxWait max time to wait
      * @param unit    time unit
@@ -78,6 +138,130 @@ public class WarmUper<A extends Annotation>
         this.maxMs = unit.toMillis( maxWait );
     }
 
+    /**
+     * Sets a shared executor to run the warm ups, such as a {@link ForkJoinPool}.
+     * The stager never shuts it down.
+     *
+     * @param executorService the executor to run the warm ups, null to let the stager create one for each warm up
+     */
+    public void setExecutorService( ExecutorService executorService )
+    {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Sets the maximum number of warm ups run concurrently by the {@link ForkJoinPool} the stager creates,
+     * the default is the number of available processors. It has no effect when an executor is set.
+     *
+     * @param parallelism the maximum number of warm ups run concurrently
+     */
+    public void setParallelism( int parallelism )
+    {
+        if ( parallelism < 1 )
+        {
+            throw new IllegalArgumentException( "Parallelism must be positive: " + parallelism );
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Runs each warm up on its own virtual thread, when the running JVM supports them (Java 21+),
+     * instead of a {@link ForkJoinPool}. It has no effect when an executor is set.
+     *
+     * @param virtualThreads true to run warm ups on virtual threads when supported
+     */
+    public void setVirtualThreads( boolean virtualThreads )
+    {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Sets what to do when the warm up dependencies form cycles, which are detected before any warm up runs.
+     * The default is {@link CyclePolicy#BREAK}, logging each broken cycle; with {@link CyclePolicy#FAIL} the
+     * warm up throws a {@link WarmUpCycleException} naming the cycle path.
+     *
+     * @param cyclePolicy the cycle policy
+     * @since 0.2.0
+     */
+    public void setCyclePolicy( CyclePolicy cyclePolicy )
+    {
+        if ( cyclePolicy == null )
+        {
+            throw new IllegalArgumentException( "Cycle policy must be specified" );
+        }
+        if ( this.cyclePolicy != cyclePolicy )
+        {
+            this.cyclePolicy = cyclePolicy;
+            lastGraph = null;
+        }
+    }
+
+    /**
+     * Makes {@link #stage(StageHandler)} wait, once all the types are warm, for the JIT compiler activity to settle:
+     * until the compilation time reported by the {@link java.lang.management.CompilationMXBean} barely grows during
+     * a whole quiet period. Not settling within the maximum wait is reported, see
+     * {@link WarmUpReport#isJitSettled()}, but does not fail the warm up. The default is not to wait.
+     *
+     * @param quietPeriod the period without significant JIT compilation, 0 not to wait
+     * @param maxWait     the maximum time to wait for the JIT compiler activity to settle
+     * @param unit        time unit
+     * @since 0.2.0
+     */
+    public void setJitSettling( long quietPeriod, long maxWait, TimeUnit unit )
+    {
+        if ( quietPeriod < 0 || maxWait < 0 )
+        {
+            throw new IllegalArgumentException( "JIT settling times cannot be negative" );
+        }
+        this.jitQuietNanos = unit.toNanos( quietPeriod );
+        this.jitSettleMaxNanos = unit.toNanos( maxWait );
+    }
+
+    /**
+     * Persists the warm up duration of each type to the given file at the end of each warm up, and schedules
+     * the next warm ups from it: ready types are dispatched longest first, by predicted duration of the longest
+     * chain of warm ups they start, instead of in readiness order. The report then compares the predicted
+     * warm up duration with the actual one, see {@link WarmUpReport#getPredictedNanos()}. Failing to read or
+     * write the file does not fail the warm up.
+     *
+     * @param history the file to persist durations to, null not to persist them
+     * @since 0.2.0
+     */
+    public void setDurationHistory( File history )
+    {
+        this.history = history != null ? new WarmUpHistory( history ) : null;
+    }
+
+    /**
+     * Writes a class list of the application working set once {@link #stage(StageHandler)} warmed up all the types,
+     * to build a class data sharing archive from. The training report is logged and available from
+     * {@link ClassListTraining#getLastReport()}; failing to write the class list does not fail the warm up.
+     *
+     * @param classListTraining the training to finish once warm, null not to train
+     * @since 0.2.0
+     */
+    public void setClassListTraining( ClassListTraining classListTraining )
+    {
+        this.classListTraining = classListTraining;
+    }
+
+    /**
+     * Sets the injector the registered types come from, so that warm up dependencies are resolved from its
+     * bindings rather than from the injection points of the registered types. {@link WarmUpModule} sets it.
+     *
+     * @param injector the injector providing the warmed up objects
+     */
+    @Inject
+    public void setInjector( Injector injector )
+    {
+        BindingGraph current = bindings;
+        if ( current == null || current.getInjector() != injector )
+        {
+            bindings = new BindingGraph( injector );
+            lastGraph = null;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -115,35 +299,341 @@ public class WarmUper<A extends Annotation>
     @Override
     public void stage( StageHandler stageHandler )
     {
-        Map<TypeLiteral<?>, Set<Stageable>> localCopy = new HashMap<TypeLiteral<?>, Set<Stageable>>();
-        localCopy.putAll( reverseLookup );
-        reverseLookup.clear();
+        if ( stageHandler == null )
+        {
+            stageHandler = new NoOpStageHandler();
+        }
 
-        ForkJoinPool forkJoinPool = new ForkJoinPool();
+        PreparedWarmUp warmUp = prepare( stageHandler, false );
+        if ( warmUp == null )
+        {
+            return;
+        }
+
+        WarmUpExecution execution = warmUp.execution;
+        boolean success = false;
         try
         {
-            ConcurrentMap<TypeLiteral<?>, WarmUpTask> inProgress = new ConcurrentHashMap<TypeLiteral<?>, WarmUpTask>();
-            forkJoinPool.submit( new WarmUpTask( stageHandler, WarmUpTask.ROOT, localCopy, inProgress ) );
+            success = execution.execute( maxMs );
+            lastReport = execution.report( !success );
+            record( warmUp.history, lastReport );
+            if ( !success )
+            {
+                throw new RuntimeException( new WarmUpTimeoutException( lastReport ) );
+            }
+            if ( jitQuietNanos > 0 )
+            {
+                lastReport = awaitJitSettled( lastReport );
+            }
+            train( warmUp.types );
+        }
+        catch ( InterruptedException e )
+        {
+            lastReport = execution.report( false );
+            Thread.currentThread().interrupt();
         }
         finally
         {
-            forkJoinPool.shutdown();
+            warmUp.shutdownExecutor( !success );
         }
+    }
+
+    /**
+     * Warms up the registered types, returning as soon as the critical ones are warm together with the types
+     * they depend on, see {@link WarmUp#critical()}; the other types keep warming up in the background.
+     * The maximum wait applies to the critical warm ups only: if it expires, the whole warm up is cancelled and a
+     * {@link WarmUpTimeoutException} (wrapped in a {@link RuntimeException}) is thrown. If the calling thread is
+     * interrupted meanwhile, the whole warm up is cancelled as well and so is the returned future.
+     * <p>
+     * {@link #getLastReport()} reports the critical phase until the background warm ups complete,
+     * then the whole warm up.
+     *
+     * @param stageHandler the hook to track warm ups, invoked from the warm up threads
+     * @return the future of the background warm ups, completed with the report of the whole warm up
+     */
+    public WarmUpFuture stageCritical( StageHandler stageHandler )
+    {
+        if ( stageHandler == null )
+        {
+            stageHandler = new NoOpStageHandler();
+        }
+
+        final PreparedWarmUp warmUp = prepare( stageHandler, true );
+        if ( warmUp == null )
+        {
+            WarmUpFuture future = new WarmUpFuture( null );
+            future.complete( new WarmUpReport( new HashMap<TypeLiteral<?>, WarmUpReport.Entry>(), 0, false ), false );
+            return future;
+        }
+
+        final WarmUpExecution execution = warmUp.execution;
+        final WarmUpFuture future = new WarmUpFuture( execution );
+        execution.setCompletionListener( new Runnable()
+        {
+
+            @Override
+            public void run()
+            {
+                WarmUpReport report = execution.report( false, System.nanoTime() );
+                record( warmUp.history, report );
+                warmUp.shutdownExecutor( execution.isCancelled() );
+                synchronized ( future )
+                {
+                    lastReport = report;
+                    future.complete( report, execution.isCancelled() );
+                }
+            }
+
+        } );
+
         try
         {
-            boolean success = forkJoinPool.awaitTermination( maxMs, TimeUnit.MILLISECONDS );
-            if ( !success )
+            if ( !execution.executeCritical( maxMs ) )
+            {
+                lastReport = execution.report( true );
+                throw new RuntimeException( new WarmUpTimeoutException( lastReport ) );
+            }
+            synchronized ( future )
+            {
+                // unless the background warm ups completed meanwhile
+                if ( !future.isDone() )
+                {
+                    lastReport = execution.report( false );
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            // the warm up has been cancelled, the completion listener reported it
+            Thread.currentThread().interrupt();
+        }
+        return future;
+    }
+
+    /**
+     * Takes the registered types and sets up their warm up.
+     *
+     * @param stageHandler the hook to track warm ups
+     * @param critical     true to tell the critical types apart, false if all types are
+     * @return the warm up, null if no type is registered
+     */
+    private PreparedWarmUp prepare( StageHandler stageHandler, boolean critical )
+    {
+        Map<TypeLiteral<?>, Set<Stageable>> localCopy = new HashMap<TypeLiteral<?>, Set<Stageable>>();
+        localCopy.putAll( reverseLookup );
+        reverseLookup.clear();
+        if ( localCopy.isEmpty() )
+        {
+            return null;
+        }
+
+        WarmUpGraph graph = graphOf( localCopy.keySet() );
+        Set<TypeLiteral<?>> criticalTypes = graph.getTypes();
+        if ( critical )
+        {
+            criticalTypes = new HashSet<TypeLiteral<?>>();
+            for ( TypeLiteral<?> type : graph.getTypes() )
             {
-                forkJoinPool.shutdownNow();
-                throw new RuntimeException( new TimeoutException( "Warm up stager timed out" ) );
+                if ( isCritical( type ) )
+                {
+                    criticalTypes.add( type );
+                }
             }
         }
+
+        ExecutorService executor = executorService;
+        boolean ownExecutor = executor == null;
+        if ( ownExecutor )
+        {
+            executor = newExecutor( graph.size() );
+        }
+
+        WarmUpExecution execution = new WarmUpExecution( graph, localCopy, criticalTypes, executor, stageHandler );
+        setIterations( execution, graph.getTypes() );
+        WarmUpHistory currentHistory = history;
+        prioritize( execution, graph.getTypes(), executor, currentHistory );
+        return new PreparedWarmUp( graph.getTypes(), execution, ownExecutor ? executor : null, currentHistory );
+    }
+
+    private WarmUpGraph graphOf( Set<TypeLiteral<?>> types )
+    {
+        WarmUpGraph graph = lastGraph;
+        if ( graph == null || !graph.getTypes().equals( types ) )
+        {
+            graph = WarmUpGraph.build( types, bindings, cyclePolicy );
+            for ( List<TypeLiteral<?>> cycle : graph.getCycles() )
+            {
+                LOGGER.warning( "Warming up sequentially the types of the dependency cycle: " + cycle );
+            }
+            lastGraph = graph;
+        }
+        return graph;
+    }
+
+    private WarmUpReport awaitJitSettled( WarmUpReport report )
+    {
+        long start = System.nanoTime();
+        boolean settled = false;
+        try
+        {
+            settled = JitMonitor.awaitSettled( jitQuietNanos, start + jitSettleMaxNanos );
+        }
         catch ( InterruptedException e )
         {
-            forkJoinPool.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        return report.withJitSettling( System.nanoTime() - start, settled );
+    }
+
+    private void prioritize( WarmUpExecution execution, Set<TypeLiteral<?>> types, ExecutorService executor,
+                             WarmUpHistory currentHistory )
+    {
+        if ( currentHistory == null )
+        {
+            return;
+        }
+        try
+        {
+            Map<TypeLiteral<?>, Long> predictions = currentHistory.predict( types );
+            if ( predictions != null )
+            {
+                // blocked ForkJoinPool workers are compensated, so only thread pools bound the concurrent warm ups
+                int workers = executor instanceof ThreadPoolExecutor
+                    ? ( (ThreadPoolExecutor) executor ).getMaximumPoolSize() : Integer.MAX_VALUE;
+                execution.prioritize( predictions, workers );
+            }
+        }
+        catch ( IOException e )
+        {
+            LOGGER.log( Level.WARNING, "Impossible to read the warm up durations from " + currentHistory.getFile(), e );
+        }
+    }
+
+    private static void record( WarmUpHistory currentHistory, WarmUpReport report )
+    {
+        if ( currentHistory == null )
+        {
+            return;
+        }
+        try
+        {
+            currentHistory.record( report );
+        }
+        catch ( IOException e )
+        {
+            LOGGER.log( Level.WARNING, "Impossible to write the warm up durations to " + currentHistory.getFile(), e );
+        }
+    }
+
+    private void train( Set<TypeLiteral<?>> types )
+    {
+        ClassListTraining training = classListTraining;
+        if ( training == null )
+        {
+            return;
+        }
+        BindingGraph current = bindings;
+        try
+        {
+            LOGGER.info( training.finish( current != null ? current.getInjector() : null, types ).getSummary() );
+        }
+        catch ( IOException e )
+        {
+            LOGGER.log( Level.WARNING, "Impossible to write the class list " + training.getClassList(), e );
+        }
+    }
+
+    private void setIterations( WarmUpExecution execution, Set<TypeLiteral<?>> types )
+    {
+        for ( TypeLiteral<?> type : types )
+        {
+            int iterations = 1;
+            long maxIterationMs = 0;
+            boolean unlimited = false;
+            for ( WarmUp warmUp : warmUpsOf( type ) )
+            {
+                if ( warmUp.iterations() > 1 )
+                {
+                    iterations = Math.max( iterations, warmUp.iterations() );
+                    unlimited |= warmUp.maxIterationMs() <= 0;
+                    maxIterationMs = Math.max( maxIterationMs, warmUp.maxIterationMs() );
+                }
+            }
+            if ( iterations > 1 )
+            {
+                execution.setIterations( type, iterations,
+                                         unlimited ? 0 : TimeUnit.MILLISECONDS.toNanos( maxIterationMs ) );
+            }
+        }
+    }
 
+    private boolean isCritical( TypeLiteral<?> type )
+    {
+        if ( stage != WarmUp.class )
+        {
+            return true;
+        }
+        for ( WarmUp warmUp : warmUpsOf( type ) )
+        {
+            if ( warmUp.critical() )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the {@link WarmUp} annotations of the methods of the type hierarchy, none for other stages
+     */
+    private List<WarmUp> warmUpsOf( TypeLiteral<?> type )
+    {
+        List<WarmUp> warmUps = new ArrayList<WarmUp>();
+        if ( stage != WarmUp.class )
+        {
+            return warmUps;
+        }
+        for ( Class<?> klass = type.getRawType(); klass != null && klass != Object.class; klass = klass.getSuperclass() )
+        {
+            for ( Method method : klass.getDeclaredMethods() )
+            {
+                WarmUp warmUp = method.getAnnotation( WarmUp.class );
+                if ( warmUp != null )
+                {
+                    warmUps.add( warmUp );
+                }
+            }
+        }
+        return warmUps;
+    }
+
+    private ExecutorService newExecutor( int types )
+    {
+        if ( virtualThreads )
+        {
+            try
+            {
+                Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+                return (ExecutorService) factory.invoke( null );
+            }
+            catch ( Exception e )
+            {
+                // virtual threads are not supported by this JVM, fall back to the fork-join pool
+            }
+        }
+        return new ForkJoinPool( Math.min( parallelism, types ) );
+    }
+
+    /**
+     * Returns the report of the last warm up performed by {@link #stage(StageHandler)} or
+     * {@link #stageCritical(StageHandler)}, also available from the {@link WarmUpTimeoutException}
+     * when it timed out.
+     *
+     * @return the report of the last warm up, null if nothing was warmed up yet
+     */
+    public WarmUpReport getLastReport()
+    {
+        return lastReport;
     }
 
     /**
@@ -154,4 +644,48 @@ public class WarmUper<A extends Annotation>
     {
         return stage;
     }
-}
\ No newline at end of file
+    /**
+     * A warm up set up by {@link #prepare(StageHandler, boolean)}.
+     */
+    private static final class PreparedWarmUp
+    {
+
+        final Set<TypeLiteral<?>> types;
+
+        final WarmUpExecution execution;
+
+        /**
+         * The executor created for this warm up only, null if it is the stager one.
+         */
+        final ExecutorService ownExecutor;
+
+        final WarmUpHistory history;
+
+        PreparedWarmUp( Set<TypeLiteral<?>> types, WarmUpExecution execution, ExecutorService ownExecutor,
+                        WarmUpHistory history )
+        {
+            this.types = types;
+            this.execution = execution;
+            this.ownExecutor = ownExecutor;
+            this.history = history;
+        }
+
+        void shutdownExecutor( boolean now )
+        {
+            if ( ownExecutor == null )
+            {
+                return;
+            }
+            if ( now )
+            {
+                ownExecutor.shutdownNow();
+            }
+            else
+            {
+                ownExecutor.shutdown();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.apachi.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import org.apache.onami.lifecycle.warmup.WarmUp;
+
+public class Bindings
+{
+    /*
+        Consumer depends on Linked through its interface, on Provided through a @Provides method
+        and on Lazy through a Provider
+     */
+
+    public interface Service
+    {
+    }
+
+    public static class Linked
+        implements Service
+    {
+        @WarmUp
+        public void warmUp()
+        {
+        }
+    }
+
+    public static class Provided
+    {
+        @WarmUp
+        public void warmUp()
+        {
+        }
+    }
+
+    public static class Wrapper
+    {
+        final Provided provided;
+
+        Wrapper( Provided provided )
+        {
+            this.provided = provided;
+        }
+    }
+
+    public static class Lazy
+    {
+        @WarmUp
+        public void warmUp()
+        {
+        }
+    }
+
+    public static class Consumer
+    {
+        @Inject
+        public Consumer( Service service, Wrapper wrapper, Provider<Lazy> lazy )
+        {
+            lazy.get();
+        }
+
+        @WarmUp
+        public void warmUp()
+        {
+        }
+    }
+
+    public static class Module
+        extends AbstractModule
+    {
+        @Override
+        protected void configure()
+        {
+            bind( Service.class ).to( Linked.class );
+        }
+
+        @Provides
+        Wrapper wrapper( Provided provided )
+        {
+            return new Wrapper( provided );
+        }
+    }
+}
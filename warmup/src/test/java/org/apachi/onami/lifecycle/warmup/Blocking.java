@@ -0,0 +1,72 @@
+package org.apachi.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.onami.lifecycle.warmup.WarmUp;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+public class Blocking
+{
+    /*
+        Root classes blocking until both warm up concurrently
+     */
+
+    @Singleton
+    public static class A
+    {
+        private final CyclicBarrier barrier;
+
+        @Inject
+        public A( CyclicBarrier barrier )
+        {
+            this.barrier = barrier;
+        }
+
+        @WarmUp
+        public void warmUp()
+            throws Exception
+        {
+            barrier.await( 5, TimeUnit.SECONDS );
+        }
+    }
+
+    @Singleton
+    public static class B
+    {
+        private final CyclicBarrier barrier;
+
+        @Inject
+        public B( CyclicBarrier barrier )
+        {
+            this.barrier = barrier;
+        }
+
+        @WarmUp
+        public void warmUp()
+            throws Exception
+        {
+            barrier.await( 5, TimeUnit.SECONDS );
+        }
+    }
+}
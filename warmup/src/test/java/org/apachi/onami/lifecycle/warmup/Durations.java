@@ -0,0 +1,73 @@
+package org.apachi.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.onami.lifecycle.warmup.WarmUp;
+
+public class Durations
+{
+    /*
+        Independent warm ups, one of them much longer than the others
+     */
+
+    @Singleton
+    public static class Short1
+    {
+        @Inject
+        Recorder recorder;
+
+        @WarmUp
+        public void warmUp()
+            throws InterruptedException
+        {
+            recorder.record( "Short1" );
+        }
+    }
+
+    @Singleton
+    public static class Short2
+    {
+        @Inject
+        Recorder recorder;
+
+        @WarmUp
+        public void warmUp()
+            throws InterruptedException
+        {
+            recorder.record( "Short2" );
+        }
+    }
+
+    @Singleton
+    public static class Long
+    {
+        @Inject
+        Recorder recorder;
+
+        @WarmUp
+        public void warmUp()
+            throws InterruptedException
+        {
+            recorder.record( "Long" );
+        }
+    }
+}
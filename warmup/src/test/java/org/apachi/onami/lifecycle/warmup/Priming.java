@@ -0,0 +1,58 @@
+package org.apachi.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Singleton;
+import org.apache.onami.lifecycle.warmup.WarmUp;
+
+public class Priming
+{
+    /*
+        Counted runs a fixed number of iterations, Budgeted iterates until its time budget expires
+     */
+
+    @Singleton
+    public static class Counted
+    {
+        public final AtomicInteger invocations = new AtomicInteger();
+
+        @WarmUp( iterations = 25 )
+        public void warmUp()
+        {
+            invocations.incrementAndGet();
+        }
+    }
+
+    @Singleton
+    public static class Budgeted
+    {
+        public final AtomicInteger invocations = new AtomicInteger();
+
+        @WarmUp( iterations = Integer.MAX_VALUE, maxIterationMs = 50 )
+        public void warmUp()
+            throws InterruptedException
+        {
+            invocations.incrementAndGet();
+            Thread.sleep( 1 );
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.apachi.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.AbstractModule;
+import javax.inject.Inject;
+import org.apache.onami.lifecycle.warmup.ConcurrentSingleton;
+
+public class Singletons
+{
+    /*
+        Pool and Index can only be constructed together, Client depends on both
+     */
+
+    static final CyclicBarrier TOGETHER = new CyclicBarrier( 2 );
+
+    @ConcurrentSingleton
+    public static class Pool
+    {
+        @Inject
+        public Pool()
+            throws Exception
+        {
+            TOGETHER.await( 10, TimeUnit.SECONDS );
+        }
+    }
+
+    @ConcurrentSingleton
+    public static class Index
+    {
+        @Inject
+        public Index()
+            throws Exception
+        {
+            TOGETHER.await( 10, TimeUnit.SECONDS );
+        }
+    }
+
+    @ConcurrentSingleton
+    public static class Client
+    {
+        final Pool pool;
+
+        final Index index;
+
+        @Inject
+        public Client( Pool pool, Index index )
+        {
+            this.pool = pool;
+            this.index = index;
+        }
+    }
+
+    public static class Module
+        extends AbstractModule
+    {
+        @Override
+        protected void configure()
+        {
+            bind( Client.class );
+            bind( Index.class );
+            bind( Pool.class );
+        }
+    }
+}
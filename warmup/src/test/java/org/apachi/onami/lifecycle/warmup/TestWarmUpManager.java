@@ -22,19 +22,40 @@ package org.apachi.onami.lifecycle.warmup;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import jsr166y.ForkJoinPool;
 import org.apache.onami.lifecycle.core.LifeCycleStageModule;
+import org.apache.onami.lifecycle.core.MetricsStageHandler;
 import org.apache.onami.lifecycle.core.StageHandler;
 import org.apache.onami.lifecycle.core.Stager;
+import org.apache.onami.lifecycle.warmup.ClassListReport;
+import org.apache.onami.lifecycle.warmup.ClassListTraining;
+import org.apache.onami.lifecycle.warmup.CyclePolicy;
+import org.apache.onami.lifecycle.warmup.ParallelSingletonModule;
 import org.apache.onami.lifecycle.warmup.WarmUp;
+import org.apache.onami.lifecycle.warmup.WarmUpCycleException;
+import org.apache.onami.lifecycle.warmup.WarmUpFuture;
 import org.apache.onami.lifecycle.warmup.WarmUpModule;
+import org.apache.onami.lifecycle.warmup.WarmUpReport;
+import org.apache.onami.lifecycle.warmup.WarmUpTimeoutException;
 import org.apache.onami.lifecycle.warmup.WarmUper;
 import org.junit.Test;
 
@@ -42,6 +63,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
+import com.google.inject.TypeLiteral;
 
 public class TestWarmUpManager
 {
@@ -79,6 +101,46 @@ public class TestWarmUpManager
         assertEquals( 1, errorCount.get() );
     }
 
+    @Test
+    public void testFailingStageHandler()
+        throws Exception
+    {
+        Module module = new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( CountDownLatch.class ).toInstance( new CountDownLatch( 3 ) );
+            }
+        };
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 20 ) );
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ), module );
+        injector.getInstance( Dag1.A.class );
+
+        final AtomicInteger errorCount = new AtomicInteger( 0 );
+        StageHandler stageHandler = new StageHandler()
+        {
+            @Override
+            public <I> void onSuccess( I injectee )
+            {
+                throw new IllegalStateException( "failing handler" );
+            }
+
+            @Override
+            public <I, E extends Throwable> void onError( I injectee, E error )
+            {
+                errorCount.incrementAndGet();
+            }
+        };
+        long start = System.nanoTime();
+        stager.stage( stageHandler );
+
+        // the dependents of the failed warm ups are released rather than waiting for the timeout
+        assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) < 5000 );
+        assertEquals( 3, injector.getInstance( Recorder.class ).getRecordings().size() );
+        assertEquals( 3, errorCount.get() );
+    }
+
     @Test
     public void testDag1()
         throws Exception
@@ -108,6 +170,29 @@ public class TestWarmUpManager
         assertOrdering( recorder, "A", "C" );
     }
 
+    @Test
+    public void testMetrics()
+        throws Exception
+    {
+        Module module = new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( CountDownLatch.class ).toInstance( new CountDownLatch( 3 ) );
+            }
+        };
+        Injector injector = Guice.createInjector( new WarmUpModule(), module );
+        injector.getInstance( Dag1.A.class );
+        MetricsStageHandler stageHandler = new MetricsStageHandler();
+        injector.getInstance( LifeCycleStageModule.key( WarmUp.class ) ).stage( stageHandler );
+
+        MetricsStageHandler.Snapshot snapshot = stageHandler.snapshot();
+        assertEquals( 3, snapshot.getMethods().size() );
+        assertEquals( 1, snapshot.getMethods().get( Dag1.A.class.getName() + "#warmUp" ).getCount() );
+        assertEquals( 3, snapshot.getSlowest().size() );
+    }
+
     @Test
     public void testDag2()
         throws Exception
@@ -209,6 +294,338 @@ public class TestWarmUpManager
         assertOrdering( recorder, "A", "B" );
     }
 
+    @Test
+    public void testReport()
+        throws Exception
+    {
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ) );
+        injector.getInstance( Dag4.A.class );
+        injector.getInstance( LifeCycleStageModule.key( WarmUp.class ) ).stage();
+
+        WarmUpReport report = stager.getLastReport();
+        System.out.println( report.getSummary() );
+
+        assertFalse( report.isTimedOut() );
+        assertTrue( report.getUnfinished().isEmpty() );
+        assertEquals( new HashSet<TypeLiteral<?>>( Arrays.<TypeLiteral<?>>asList( TypeLiteral.get( Dag4.B.class ),
+                                                                                  TypeLiteral.get( Dag4.C.class ) ) ),
+                      report.getEntries().get( TypeLiteral.get( Dag4.A.class ) ).getDependencies() );
+
+        List<WarmUpReport.Entry> criticalPath = report.getCriticalPath();
+        assertEquals( TypeLiteral.get( Dag4.A.class ), criticalPath.get( criticalPath.size() - 1 ).getType() );
+        assertTrue( criticalPath.get( 0 ).getDependencies().isEmpty() );
+        for ( int i = 1; i < criticalPath.size(); i++ )
+        {
+            assertTrue( criticalPath.get( i ).getDependencies().contains( criticalPath.get( i - 1 ).getType() ) );
+            assertTrue( criticalPath.get( i ).getStartNanos() >= criticalPath.get( i - 1 ).getEndNanos() );
+        }
+    }
+
+    @Test
+    public void testCriticalWarmUps()
+        throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        Module module = new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( CountDownLatch.class ).toInstance( release );
+            }
+        };
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ), module );
+        injector.getInstance( TwoPhase.Ready.class );
+        injector.getInstance( TwoPhase.Background.class );
+
+        WarmUpFuture background = stager.stageCritical( null );
+
+        WarmUpReport ready = stager.getLastReport();
+        assertEquals( WarmUpReport.State.FINISHED,
+                      ready.getEntries().get( TypeLiteral.get( TwoPhase.Ready.class ) ).getState() );
+        assertEquals( WarmUpReport.State.FINISHED,
+                      ready.getEntries().get( TypeLiteral.get( TwoPhase.Pool.class ) ).getState() );
+        assertEquals( Arrays.<TypeLiteral<?>>asList( TypeLiteral.get( TwoPhase.Background.class ) ),
+                      ready.getUnfinished() );
+        assertFalse( background.isDone() );
+
+        final CountDownLatch listened = new CountDownLatch( 1 );
+        background.addListener( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listened.countDown();
+            }
+        } );
+        release.countDown();
+
+        WarmUpReport complete = background.get( 10, TimeUnit.SECONDS );
+        assertTrue( complete.getUnfinished().isEmpty() );
+        assertTrue( listened.await( 10, TimeUnit.SECONDS ) );
+        assertEquals( complete, stager.getLastReport() );
+    }
+
+    @Test
+    public void testInterruptedCriticalWarmUps()
+        throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        Module module = new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( CountDownLatch.class ).toInstance( release );
+            }
+        };
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ), module );
+        injector.getInstance( TwoPhase.Ready.class );
+        injector.getInstance( TwoPhase.Background.class );
+
+        WarmUpFuture background;
+        Thread.currentThread().interrupt();
+        try
+        {
+            background = stager.stageCritical( null );
+        }
+        finally
+        {
+            assertTrue( Thread.interrupted() );
+            release.countDown();
+        }
+
+        assertTrue( background.isDone() );
+        assertTrue( background.isCancelled() );
+        try
+        {
+            background.get();
+            fail( "Interrupted warm up not cancelled" );
+        }
+        catch ( CancellationException e )
+        {
+            // expected
+        }
+        assertTrue( stager.getLastReport().getUnfinished().contains( TypeLiteral.get( TwoPhase.Background.class ) ) );
+    }
+
+    @Test
+    public void testBindingDependencies()
+        throws Exception
+    {
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ), new Bindings.Module() );
+        injector.getInstance( Bindings.Consumer.class );
+        injector.getInstance( LifeCycleStageModule.key( WarmUp.class ) ).stage();
+
+        WarmUpReport report = stager.getLastReport();
+        assertEquals( new HashSet<TypeLiteral<?>>( Arrays.<TypeLiteral<?>>asList( TypeLiteral.get( Bindings.Linked.class ),
+                                                                                  TypeLiteral.get( Bindings.Provided.class ),
+                                                                                  TypeLiteral.get( Bindings.Lazy.class ) ) ),
+                      report.getEntries().get( TypeLiteral.get( Bindings.Consumer.class ) ).getDependencies() );
+    }
+
+    @Test
+    public void testCyclesAreBroken()
+        throws Exception
+    {
+        Injector injector = Guice.createInjector( new WarmUpModule() );
+        Recorder recorder = injector.getInstance( Recorder.class );
+        injector.getInstance( Cycle.A.class );
+        injector.getInstance( Cycle.B.class );
+        injector.getInstance( Cycle.C.class );
+        injector.getInstance( LifeCycleStageModule.key( WarmUp.class ) ).stage();
+
+        assertSingleExecution( recorder );
+        assertEquals( 3, recorder.getRecordings().size() );
+        for ( Set<String> concurrent : recorder.getConcurrents() )
+        {
+            assertEquals( 1, concurrent.size() );
+        }
+    }
+
+    @Test
+    public void testCyclesFail()
+        throws Exception
+    {
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        stager.setCyclePolicy( CyclePolicy.FAIL );
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ) );
+        Recorder recorder = injector.getInstance( Recorder.class );
+        injector.getInstance( Cycle.A.class );
+        injector.getInstance( Cycle.B.class );
+        injector.getInstance( Cycle.C.class );
+        try
+        {
+            injector.getInstance( LifeCycleStageModule.key( WarmUp.class ) ).stage();
+            fail( "Expected a WarmUpCycleException" );
+        }
+        catch ( WarmUpCycleException e )
+        {
+            List<TypeLiteral<?>> cycle = e.getCycle();
+            assertEquals( 4, cycle.size() );
+            assertEquals( cycle.get( 0 ), cycle.get( 3 ) );
+            assertEquals( new HashSet<TypeLiteral<?>>( Arrays.<TypeLiteral<?>>asList( TypeLiteral.get( Cycle.A.class ),
+                                                                                      TypeLiteral.get( Cycle.B.class ),
+                                                                                      TypeLiteral.get( Cycle.C.class ) ) ),
+                          new HashSet<TypeLiteral<?>>( cycle ) );
+        }
+        assertEquals( 0, recorder.getRecordings().size() );
+    }
+
+    @Test
+    public void testJitPriming()
+        throws Exception
+    {
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        stager.setJitSettling( 20, 2000, TimeUnit.MILLISECONDS );
+        final AtomicInteger successes = new AtomicInteger();
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ) );
+        Priming.Counted counted = injector.getInstance( Priming.Counted.class );
+        Priming.Budgeted budgeted = injector.getInstance( Priming.Budgeted.class );
+        stager.stage( new StageHandler()
+        {
+            @Override
+            public <I> void onSuccess( I injectee )
+            {
+                successes.incrementAndGet();
+            }
+
+            @Override
+            public <I, E extends Throwable> void onError( I injectee, E error )
+            {
+            }
+        } );
+
+        WarmUpReport report = stager.getLastReport();
+        System.out.println( report.getSummary() );
+        assertEquals( 25, counted.invocations.get() );
+        assertEquals( 25, report.getEntries().get( TypeLiteral.get( Priming.Counted.class ) ).getIterations() );
+        int budgetedIterations = report.getEntries().get( TypeLiteral.get( Priming.Budgeted.class ) ).getIterations();
+        assertEquals( budgeted.invocations.get(), budgetedIterations );
+        assertTrue( budgetedIterations > 1 && budgetedIterations < 1000 );
+        // the outcome of the iterations is reported once per warm up method
+        assertEquals( 2, successes.get() );
+        assertTrue( report.getJitSettleNanos() >= 0 );
+    }
+
+    @Test
+    public void testClassListTraining()
+        throws Exception
+    {
+        File classList = File.createTempFile( "warmup", ".classlist" );
+        File baseline = new File( classList.getPath() + ".baseline" );
+        classList.deleteOnExit();
+        baseline.deleteOnExit();
+
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        ClassListTraining training = new ClassListTraining( classList );
+        stager.setClassListTraining( training );
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ) );
+        Recorder recorder = injector.getInstance( Recorder.class );
+        injector.getInstance( Flat.A.class ).recorder = recorder;
+        injector.getInstance( LifeCycleStageModule.key( WarmUp.class ) ).stage();
+
+        ClassListReport report = training.getLastReport();
+        System.out.println( report.getSummary() );
+        BufferedReader reader = new BufferedReader( new FileReader( classList ) );
+        List<String> classNames = new ArrayList<String>();
+        try
+        {
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                classNames.add( line );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        assertTrue( classNames.contains( "org/apachi/onami/lifecycle/warmup/Flat$A" ) );
+        assertEquals( classNames.size(), report.getClassCount() );
+        assertFalse( report.isArchiveInUse() );
+        assertTrue( baseline.isFile() );
+    }
+
+    @Test
+    public void testLongestFirstFromHistory()
+        throws Exception
+    {
+        File history = File.createTempFile( "warmup", ".durations" );
+        history.deleteOnExit();
+        assertTrue( history.delete() );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 1 );
+        try
+        {
+            WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+            warmUpDurations( stager, history, executor );
+            assertEquals( -1, stager.getLastReport().getPredictedNanos() );
+            assertTrue( history.isFile() );
+
+            // a single worker, the long warm up known from the previous run goes first
+            stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+            Recorder recorder = warmUpDurations( stager, history, executor );
+            WarmUpReport report = stager.getLastReport();
+            System.out.println( report.getSummary() );
+            assertEquals( "Long", recorder.getRecordings().get( 0 ) );
+            assertTrue( report.getPredictedNanos() >= TimeUnit.MILLISECONDS.toNanos( 110 ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private Recorder warmUpDurations( WarmUper<WarmUp> stager, File history, ExecutorService executor )
+    {
+        Module module = new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                RecorderSleepSettings recorderSleepSettings = new RecorderSleepSettings();
+                recorderSleepSettings.setBaseSleep( 5, TimeUnit.MILLISECONDS );
+                recorderSleepSettings.setBaseSleepFor( "Long", 100, TimeUnit.MILLISECONDS );
+                recorderSleepSettings.setRandomize( false );
+                bind( RecorderSleepSettings.class ).toInstance( recorderSleepSettings );
+            }
+        };
+        stager.setDurationHistory( history );
+        stager.setExecutorService( executor );
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ), module );
+        injector.getInstance( Durations.Short1.class );
+        injector.getInstance( Durations.Short2.class );
+        injector.getInstance( Durations.Long.class );
+        stager.stage();
+        return injector.getInstance( Recorder.class );
+    }
+
+    @Test
+    public void testParallelSingletons()
+        throws Exception
+    {
+        ParallelSingletonModule singletons = new ParallelSingletonModule();
+        Injector injector = Guice.createInjector( singletons, new Singletons.Module() );
+
+        WarmUpReport report = singletons.getReport();
+        System.out.println( report.getSummary() );
+        Singletons.Client client = injector.getInstance( Singletons.Client.class );
+        assertTrue( client.pool == injector.getInstance( Singletons.Pool.class ) );
+        assertTrue( client.index == injector.getInstance( Singletons.Index.class ) );
+        assertEquals( 3, report.getEntries().size() );
+        assertTrue( report.getUnfinished().isEmpty() );
+        WarmUpReport.Entry clientEntry = report.getEntries().get( TypeLiteral.get( Singletons.Client.class ) );
+        assertEquals( 2, clientEntry.getDependencies().size() );
+        for ( TypeLiteral<?> dependency : clientEntry.getDependencies() )
+        {
+            assertTrue( report.getEntries().get( dependency ).getEndNanos() <= clientEntry.getStartNanos() );
+        }
+    }
+
     @Test
     public void testFlat()
         throws Exception
@@ -228,6 +645,46 @@ public class TestWarmUpManager
         assertTrue( recorder.getRecordings().indexOf( "B" ) >= 0 );
     }
 
+    @Test
+    public void testBlockingWarmUpsOnSharedPool()
+        throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool( 1 );
+        try
+        {
+            WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+            stager.setExecutorService( pool );
+            assertBlockingWarmUpsRunConcurrently( stager );
+
+            // the shared pool is reusable
+            assertFalse( pool.isShutdown() );
+            assertBlockingWarmUpsRunConcurrently( stager );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBlockingWarmUpsOnSingleThreadedPool()
+        throws Exception
+    {
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        stager.setParallelism( 1 );
+        assertBlockingWarmUpsRunConcurrently( stager );
+    }
+
+    @Test
+    public void testVirtualThreads()
+        throws Exception
+    {
+        // falls back to a fork-join pool on JVMs without virtual threads
+        WarmUper<WarmUp> stager = new WarmUper<WarmUp>( WarmUp.class, TimeUnit.SECONDS.toMillis( 10 ) );
+        stager.setVirtualThreads( true );
+        assertBlockingWarmUpsRunConcurrently( stager );
+    }
+
     @Test
     public void testStuck()
         throws Exception
@@ -258,6 +715,13 @@ public class TestWarmUpManager
         {
             succeeded = false;
             assertTrue( e.getCause() instanceof TimeoutException );
+
+            WarmUpReport report = ( (WarmUpTimeoutException) e.getCause() ).getReport();
+            assertTrue( report.isTimedOut() );
+            assertTrue( report.getSummary(), report.getUnfinished().contains( TypeLiteral.get( Dag1.C.class ) ) );
+            assertTrue( report.getSummary(), report.getUnfinished().contains( TypeLiteral.get( Dag1.A.class ) ) );
+            assertEquals( WarmUpReport.State.PENDING,
+                          report.getEntries().get( TypeLiteral.get( Dag1.A.class ) ).getState() );
         }
 
         // Wait for all warmup methods to finish after interruption
@@ -277,6 +741,37 @@ public class TestWarmUpManager
                 recorder.getInterruptions().contains( "C" ) );
     }
 
+    private void assertBlockingWarmUpsRunConcurrently( WarmUper<WarmUp> stager )
+    {
+        Module module = new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( CyclicBarrier.class ).toInstance( new CyclicBarrier( 2 ) );
+            }
+        };
+        Injector injector = Guice.createInjector( new WarmUpModule( stager ), module );
+        injector.getInstance( Blocking.A.class );
+        injector.getInstance( Blocking.B.class );
+
+        final AtomicInteger errorCount = new AtomicInteger( 0 );
+        injector.getInstance( LifeCycleStageModule.key( WarmUp.class ) ).stage( new StageHandler()
+        {
+            @Override
+            public <I> void onSuccess( I injectee )
+            {
+            }
+
+            @Override
+            public <I, E extends Throwable> void onError( I injectee, E error )
+            {
+                errorCount.incrementAndGet();
+            }
+        } );
+        assertEquals( 0, errorCount.get() );
+    }
+
     private void assertSingleExecution( Recorder recorder )
     {
         Set<String> duplicateCheck = new HashSet<String>();
@@ -0,0 +1,76 @@
+package org.apachi.onami.lifecycle.warmup;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.onami.lifecycle.warmup.WarmUp;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TwoPhase
+{
+    /*
+        Ready is critical and depends on Pool, which is not, Background is released by the test
+     */
+
+    @Singleton
+    public static class Ready
+    {
+        @Inject
+        public Ready( Pool pool )
+        {
+        }
+
+        @WarmUp
+        public void warmUp()
+        {
+        }
+    }
+
+    @Singleton
+    public static class Pool
+    {
+        @WarmUp( critical = false )
+        public void warmUp()
+        {
+        }
+    }
+
+    @Singleton
+    public static class Background
+    {
+        private final CountDownLatch release;
+
+        @Inject
+        public Background( CountDownLatch release )
+        {
+            this.release = release;
+        }
+
+        @WarmUp( critical = false )
+        public void warmUp()
+            throws Exception
+        {
+            release.await( 5, TimeUnit.SECONDS );
+        }
+    }
+}